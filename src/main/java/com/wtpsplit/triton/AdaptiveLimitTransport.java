@@ -0,0 +1,243 @@
+package com.wtpsplit.triton;
+
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import io.grpc.Deadline;
+import io.grpc.Status;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Caps outstanding requests at a limit learned from how Triton responds
+ * (gradient-based, in the style of TCP Vegas).
+ *
+ * Each latency is compared with the long-term average latency of requests of
+ * its size, and the ratio is smoothed over the last few responses. While the
+ * smoothed ratio stays within {@value #TOLERANCE}x the limit keeps growing by
+ * a queue allowance of its square root; once it stays above, the limit
+ * shrinks in proportion, by at most half. A single slow response barely moves
+ * the smoothed ratio, so ordinary jitter does not count as congestion. The
+ * limit only grows while at least half of it is in use.
+ *
+ * A request rejected with RESOURCE_EXHAUSTED or UNAVAILABLE shrinks the limit
+ * by a quarter at once. Only requests sent after the last such decrease can
+ * trigger another, so one burst of failures shrinks the limit once rather
+ * than once per response. DEADLINE_EXCEEDED does not count: with per-document
+ * budgets it says more about one caller's budget than about Triton, and real
+ * queueing already shows up in the latency gradient.
+ *
+ * Requests over the limit wait in {@link PriorityLanes}, so higher priorities
+ * get freed slots first; beyond {@code maxQueued} they fail immediately with
+ * RESOURCE_EXHAUSTED. While any request is waiting, new ones queue behind it
+ * rather than taking a freed slot first. A request whose caller gives up
+ * leaves the queue at once.
+ */
+class AdaptiveLimitTransport implements InferTransport {
+
+    private static final double BACKOFF = 0.75;
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    // Responses averaged into the long-term latency of a size, and into the recent latency ratio
+    private static final double LONG_WINDOW = 600;
+    private static final double SHORT_WINDOW = 10;
+    // Weight of each new estimate in the limit
+    private static final double SMOOTHING = 0.2;
+
+    private final InferTransport delegate;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger draining = new AtomicInteger();
+    private final PriorityLanes<Waiter> waiting = new PriorityLanes<>();
+    // Long-term average latency per power-of-two request size (batch * seq_len), in nanos; 0 until seen
+    private final double[] longLatencies = new double[33];
+    // Recent latencies relative to their size's long-term average
+    private double recentRatio = 1;
+    private volatile double limit;
+    private long lastDecrease;
+
+    AdaptiveLimitTransport(InferTransport delegate, int maxLimit, int maxQueued) {
+        this.delegate = delegate;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.limit = Math.max(1, maxLimit / 4);
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Current limit on outstanding requests.
+     */
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        return infer(request, deadline, Priority.NORMAL, decoder);
+    }
+
+    /**
+     * Send now if under the limit, otherwise queue in the priority's lane.
+     */
+    <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline, Priority priority,
+                                   Function<ModelInferResponse, T> decoder) {
+        // Only skip the queue when no one is waiting in it
+        if (waiting.isEmpty() && tryAcquire()) {
+            return send(request, deadline, decoder);
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return CompletableFuture.failedFuture(Status.RESOURCE_EXHAUSTED
+                .withDescription("Client concurrency limit reached").asRuntimeException());
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        PriorityLanes.Entry<Waiter> entry = waiting.add(() -> start(result, request, deadline, decoder), priority);
+        // A caller that gives up while queued leaves the queue right away
+        result.whenComplete((r, e) -> {
+            if (waiting.remove(entry)) queued.decrementAndGet();
+        });
+        // A slot may have freed up before this request was queued
+        drain();
+        return result;
+    }
+
+    /**
+     * Send a queued request on the slot just acquired for it.
+     *
+     * @return False if the request was abandoned and the slot is still free
+     */
+    private <T> boolean start(CompletableFuture<T> result, ModelInferRequest request, Deadline deadline,
+                              Function<ModelInferResponse, T> decoder) {
+        if (result.isDone()) return false;
+        if (deadline != null && deadline.isExpired()) {
+            result.completeExceptionally(Status.DEADLINE_EXCEEDED
+                .withDescription("Deadline passed while waiting for a concurrency slot").asRuntimeException());
+            return false;
+        }
+        CompletableFuture<T> call;
+        try {
+            call = send(request, deadline, decoder);
+        } catch (RuntimeException e) {
+            // send has already given the slot back
+            result.completeExceptionally(e);
+            return true;
+        }
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) call.cancel(false);
+        });
+        call.whenComplete((r, e) -> {
+            if (e != null) result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            else result.complete(r);
+        });
+        return true;
+    }
+
+    private <T> CompletableFuture<T> send(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        long start = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = delegate.infer(request, deadline, decoder);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        call.whenComplete((r, e) -> {
+            if (!call.isCancelled()) update(request, start, System.nanoTime() - start, e);
+            release();
+        });
+        return call;
+    }
+
+    private synchronized void update(ModelInferRequest request, long start, long latency, Throwable error) {
+        if (error != null) {
+            Status.Code code = Status.fromThrowable(error).getCode();
+            boolean overloaded = code == Status.Code.RESOURCE_EXHAUSTED || code == Status.Code.UNAVAILABLE;
+            if (overloaded && start - lastDecrease > 0) {
+                limit = Math.max(1, limit * BACKOFF);
+                lastDecrease = System.nanoTime();
+            }
+            return;
+        }
+
+        int sizeClass = sizeClass(request);
+        double longLatency = longLatencies[sizeClass] == 0 ? latency : longLatencies[sizeClass];
+        double ratio = latency / longLatency;
+        longLatency += (latency - longLatency) / LONG_WINDOW;
+        // Catch up quickly with a server that has become faster
+        if (ratio < 0.5) longLatency *= 0.95;
+        longLatencies[sizeClass] = longLatency;
+        recentRatio += (ratio - recentRatio) / SHORT_WINDOW;
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, TOLERANCE / recentRatio));
+        double target = limit * gradient + Math.sqrt(limit);
+        // Requests that never fill the limit say nothing about a larger one
+        if (target > limit && inFlight.get() * 2 < limit) return;
+        limit = Math.max(1, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit()) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Start queued requests while slots are free. Only one thread drains at a
+     * time; a call made meanwhile, including one from a request completing
+     * inside the loop, makes it go round again instead of recursing.
+     */
+    private void drain() {
+        if (draining.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            while (!waiting.isEmpty() && tryAcquire()) {
+                Waiter next = waiting.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                    break;
+                }
+                queued.decrementAndGet();
+                if (!next.start()) inFlight.decrementAndGet();
+            }
+            missed = draining.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static int sizeClass(ModelInferRequest request) {
+        long tokens = request.getInputs(0).getShape(0) * request.getInputs(0).getShape(1);
+        return Math.min(64 - Long.numberOfLeadingZeros(Math.max(tokens, 1) - 1), 32);
+    }
+
+    /**
+     * A queued request, ready to go out once it gets a slot.
+     */
+    private interface Waiter {
+        /**
+         * @return False if the caller has given up, leaving the slot unused
+         */
+        boolean start();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
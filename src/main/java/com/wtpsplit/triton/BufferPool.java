@@ -0,0 +1,68 @@
+package com.wtpsplit.triton;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of little-endian direct buffers in power-of-two size classes, used to
+ * encode request tensors without per-request heap garbage.
+ */
+class BufferPool {
+
+    private static final int MIN_CLASS = 10;   // 1 KiB
+    private static final int MAX_CLASS = 26;   // 64 MiB
+
+    private final Queue<ByteBuffer>[] classes;
+    private final AtomicInteger[] sizes;
+    private final int maxPerClass;
+
+    @SuppressWarnings("unchecked")
+    BufferPool(int maxPerClass) {
+        this.maxPerClass = maxPerClass;
+        this.classes = new Queue[MAX_CLASS + 1];
+        this.sizes = new AtomicInteger[MAX_CLASS + 1];
+        for (int c = MIN_CLASS; c <= MAX_CLASS; c++) {
+            classes[c] = new ConcurrentLinkedQueue<>();
+            sizes[c] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Borrow a cleared buffer with at least {@code bytes} remaining, limited to exactly that many.
+     */
+    ByteBuffer acquire(int bytes) {
+        int c = sizeClass(bytes);
+        if (c > MAX_CLASS) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer buf = classes[c].poll();
+        if (buf != null) {
+            sizes[c].decrementAndGet();
+        } else {
+            buf = ByteBuffer.allocateDirect(1 << c).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buf.clear().limit(bytes);
+        return buf;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire}. The caller must not touch it afterwards.
+     */
+    void release(ByteBuffer buf) {
+        int c = Integer.numberOfTrailingZeros(buf.capacity());
+        if (buf.capacity() != (1 << c) || c < MIN_CLASS || c > MAX_CLASS) return;
+        if (sizes[c].incrementAndGet() > maxPerClass) {
+            sizes[c].decrementAndGet();
+            return;
+        }
+        classes[c].add(buf);
+    }
+
+    private static int sizeClass(int bytes) {
+        int c = 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+        return Math.max(c, MIN_CLASS);
+    }
+}
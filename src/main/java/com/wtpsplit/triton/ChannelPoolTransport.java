@@ -0,0 +1,70 @@
+package com.wtpsplit.triton;
+
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import io.grpc.Deadline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Spreads requests across several transports, one per channel, so traffic is
+ * not confined to a single HTTP/2 connection and its event loop.
+ */
+class ChannelPoolTransport implements InferTransport {
+    
+    private final Member[] members;
+    private final ChannelSelection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    
+    ChannelPoolTransport(List<InferTransport> transports, ChannelSelection selection) {
+        this.members = new Member[transports.size()];
+        for (int i = 0; i < members.length; i++) members[i] = new Member(transports.get(i));
+        this.selection = selection;
+    }
+    
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        Member member = pick();
+        member.inFlight.incrementAndGet();
+        CompletableFuture<T> result;
+        try {
+            result = member.transport.infer(request, deadline, decoder);
+        } catch (RuntimeException e) {
+            member.inFlight.decrementAndGet();
+            throw e;
+        }
+        result.whenComplete((r, e) -> member.inFlight.decrementAndGet());
+        return result;
+    }
+    
+    private Member pick() {
+        int start = Math.floorMod(next.getAndIncrement(), members.length);
+        Member best = members[start];
+        if (selection == ChannelSelection.ROUND_ROBIN) return best;
+        
+        // Scan from a rotating start so ties spread evenly
+        for (int k = 1; k < members.length; k++) {
+            Member candidate = members[(start + k) % members.length];
+            if (candidate.inFlight.get() < best.inFlight.get()) best = candidate;
+        }
+        return best;
+    }
+    
+    @Override
+    public void close() {
+        for (Member member : members) member.transport.close();
+    }
+    
+    private static class Member {
+        final InferTransport transport;
+        final AtomicInteger inFlight = new AtomicInteger();
+        
+        Member(InferTransport transport) {
+            this.transport = transport;
+        }
+    }
+}
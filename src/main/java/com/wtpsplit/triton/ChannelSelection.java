@@ -0,0 +1,13 @@
+package com.wtpsplit.triton;
+
+/**
+ * How a {@link TritonClient} with several channels picks one for each request.
+ */
+public enum ChannelSelection {
+    
+    /** Cycle through the channels in order. */
+    ROUND_ROBIN,
+    
+    /** Use the channel with the fewest requests awaiting a response. */
+    LEAST_IN_FLIGHT
+}
@@ -1,6 +1,7 @@
 package com.wtpsplit.triton;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -13,6 +14,15 @@ import java.util.concurrent.*;
  * Usage:
  * mvn exec:java -Dexec.mainClass="com.wtpsplit.triton.ConcurrentBenchmark" \
  * -Dexec.args="localhost 8085 sat_3l_sm 20"
+ * 
+ * A fifth argument (batch delay in microseconds) makes all clients share one
+ * TritonClient and route windows through a {@link MicroBatcher}.
+ * 
+ * With "mock" as the host, the benchmark starts a {@link MockTritonServer}
+ * in-process with zero latency and also reports chars per CPU-second of the
+ * client (tokenize, serialize, deserialize, extract, and its network I/O),
+ * needing no GPU. The mock's own threads are excluded from that figure:
+ * -Dexec.args="mock 0 sat_3l_sm 20"
  */
 public class ConcurrentBenchmark {
 
@@ -32,12 +42,36 @@ public class ConcurrentBenchmark {
     private final String modelName;
 
     private final int requestsPerClient;
+    private final long batchDelayMicros;
+    // In-process server whose CPU time is excluded from the client's, or null
+    private final MockTritonServer mock;
 
     public ConcurrentBenchmark(String host, int port, String modelName, int requestsPerClient) {
+        this(host, port, modelName, requestsPerClient, 0);
+    }
+
+    public ConcurrentBenchmark(String host, int port, String modelName, int requestsPerClient,
+            long batchDelayMicros) {
+        this(host, port, modelName, requestsPerClient, batchDelayMicros, null);
+    }
+
+    /**
+     * Benchmark against an in-process mock server, additionally reporting
+     * client throughput per CPU core.
+     */
+    public ConcurrentBenchmark(MockTritonServer mock, String modelName, int requestsPerClient,
+            long batchDelayMicros) {
+        this("localhost", mock.port(), modelName, requestsPerClient, batchDelayMicros, mock);
+    }
+
+    private ConcurrentBenchmark(String host, int port, String modelName, int requestsPerClient,
+            long batchDelayMicros, MockTritonServer mock) {
         this.host = host;
         this.port = port;
         this.modelName = modelName;
         this.requestsPerClient = requestsPerClient;
+        this.batchDelayMicros = batchDelayMicros;
+        this.mock = mock;
     }
 
     /**
@@ -49,6 +83,12 @@ public class ConcurrentBenchmark {
         printHeader();
         System.out.printf("  Requests per client: %d%n", requestsPerClient);
         System.out.printf("  Text length: %d chars%n", textLength);
+        if (batchDelayMicros > 0) {
+            System.out.printf("  Micro-batching: shared client, %d us max delay%n", batchDelayMicros);
+        }
+        if (mock != null) {
+            System.out.println("  Server: in-process mock, zero latency (client cost only)");
+        }
         System.out.println("=".repeat(80));
 
         // Warmup
@@ -64,20 +104,22 @@ public class ConcurrentBenchmark {
         }
 
         // Print table header
-        System.out.printf("  %8s | %12s | %15s | %12s | %12s%n",
-                "Clients", "Total Time", "Throughput", "Avg Latency", "P99 Latency");
-        System.out.println("  " + "-".repeat(70));
+        System.out.printf("  %8s | %12s | %15s | %12s | %12s%s%n",
+                "Clients", "Total Time", "Throughput", "Avg Latency", "P99 Latency",
+                mock != null ? String.format(" | %15s", "Per Core") : "");
+        System.out.println("  " + "-".repeat(mock != null ? 88 : 70));
 
         // Run benchmark for each client count
         for (int numClients : CLIENT_COUNTS) {
             BenchmarkResult result = runWithClients(numClients);
             if (result != null) {
-                System.out.printf("  %8d | %10.2f s | %12.0f c/s | %10.2f ms | %10.2f ms%n",
+                System.out.printf("  %8d | %10.2f s | %12.0f c/s | %10.2f ms | %10.2f ms%s%n",
                         numClients,
                         result.totalTimeSec,
                         result.throughputCharsPerSec,
                         result.avgLatencyMs,
-                        result.p99LatencyMs);
+                        result.p99LatencyMs,
+                        mock != null ? String.format(" | %12.0f c/s", result.charsPerCpuSec) : "");
             } else {
                 System.out.printf("  %8d | %12s | %15s | %12s | %12s%n",
                         numClients, "FAILED", "N/A", "N/A", "N/A");
@@ -92,14 +134,28 @@ public class ConcurrentBenchmark {
      * Run benchmark with specified number of concurrent clients.
      */
     private BenchmarkResult runWithClients(int numClients) {
+        if (batchDelayMicros <= 0) {
+            return runWithClients(numClients, null, null);
+        }
+        try (TritonClient client = new TritonClient(host, port, modelName);
+                MicroBatcher batcher = new MicroBatcher(client, 32, batchDelayMicros)) {
+            return runWithClients(numClients, client, batcher);
+        } catch (IOException e) {
+            System.err.println("Shared client failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BenchmarkResult runWithClients(int numClients, TritonClient client, MicroBatcher batcher) {
         ExecutorService executor = Executors.newFixedThreadPool(numClients);
         List<Future<List<Double>>> futures = new ArrayList<>();
 
         long startTime = System.nanoTime();
+        long startCpu = clientCpuNanos();
 
         // Submit tasks for each client
         for (int i = 0; i < numClients; i++) {
-            futures.add(executor.submit(this::clientWorker));
+            futures.add(executor.submit(() -> clientWorker(client, batcher)));
         }
 
         // Collect all latencies
@@ -116,6 +172,7 @@ public class ConcurrentBenchmark {
         }
 
         long endTime = System.nanoTime();
+        long cpuNanos = clientCpuNanos() - startCpu;
         executor.shutdown();
 
         if (failed || allLatencies.isEmpty()) {
@@ -129,17 +186,34 @@ public class ConcurrentBenchmark {
         double throughput = totalChars / totalTimeSec;
         double avgLatency = allLatencies.stream().mapToDouble(d -> d).average().orElse(0);
         double p99Latency = percentile(allLatencies, 99);
+        double perCpuSec = cpuNanos > 0 ? totalChars / (cpuNanos / 1_000_000_000.0) : 0;
 
-        return new BenchmarkResult(totalTimeSec, throughput, avgLatency, p99Latency);
+        return new BenchmarkResult(totalTimeSec, throughput, avgLatency, p99Latency, perCpuSec);
+    }
+
+    /**
+     * Process CPU time, less what the in-process mock server's threads used,
+     * handlers and network I/O alike. What remains is the client's work plus
+     * JVM overhead such as GC and JIT that both sides share.
+     */
+    private long clientCpuNanos() {
+        if (mock == null
+                || !(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os)) {
+            return 0;
+        }
+        return os.getProcessCpuTime() - mock.cpuNanos();
     }
 
     /**
      * Single client worker that makes multiple requests.
+     * Opens its own connection unless a shared client is given.
      */
-    private List<Double> clientWorker() {
+    private List<Double> clientWorker(TritonClient client, MicroBatcher batcher) {
         List<Double> latencies = new ArrayList<>();
 
-        try (WtpSplit wtp = new WtpSplit(host, port, modelName)) {
+        try (WtpSplit wtp = client == null
+                ? new WtpSplit(host, port, modelName)
+                : new WtpSplit(client, batcher, 0.25f, 512, 64, 32)) {
             for (int i = 0; i < requestsPerClient; i++) {
                 long start = System.nanoTime();
                 wtp.split(SAMPLE_TEXT);
@@ -188,13 +262,15 @@ public class ConcurrentBenchmark {
         final double throughputCharsPerSec;
         final double avgLatencyMs;
         final double p99LatencyMs;
+        final double charsPerCpuSec;
 
         BenchmarkResult(double totalTimeSec, double throughputCharsPerSec,
-                double avgLatencyMs, double p99LatencyMs) {
+                double avgLatencyMs, double p99LatencyMs, double charsPerCpuSec) {
             this.totalTimeSec = totalTimeSec;
             this.throughputCharsPerSec = throughputCharsPerSec;
             this.avgLatencyMs = avgLatencyMs;
             this.p99LatencyMs = p99LatencyMs;
+            this.charsPerCpuSec = charsPerCpuSec;
         }
     }
 
@@ -203,8 +279,19 @@ public class ConcurrentBenchmark {
         int port = args.length > 1 ? Integer.parseInt(args[1]) : 8085;
         String modelName = args.length > 2 ? args[2] : "sat_3l_sm";
         int requestsPerClient = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        long batchDelayMicros = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        if ("mock".equals(host)) {
+            try (MockTritonServer mock = MockTritonServer.builder(modelName).start()) {
+                new ConcurrentBenchmark(mock, modelName, requestsPerClient, batchDelayMicros).run();
+            } catch (IOException e) {
+                System.err.println("Failed to start mock server: " + e.getMessage());
+            }
+            return;
+        }
 
-        ConcurrentBenchmark benchmark = new ConcurrentBenchmark(host, port, modelName, requestsPerClient);
+        ConcurrentBenchmark benchmark = new ConcurrentBenchmark(host, port, modelName, requestsPerClient,
+                batchDelayMicros);
         benchmark.run();
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.wtpsplit.triton;
+
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.InferStatistics;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import inference.GrpcService.ModelStatisticsRequest;
+import inference.GrpcService.ModelStatisticsResponse;
+import io.grpc.Deadline;
+import io.grpc.Channel;
+import io.grpc.Status;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes each request to the Triton replica with the fewest outstanding
+ * requests, optionally adding the replica's recent average queue time
+ * (sampled from ModelStatistics) so a replica that is backing up server-side
+ * is avoided even when this client has little in flight there.
+ *
+ * Each replica has its own {@link HealthWatcher}; a replica is skipped while
+ * its watcher reports it not ready, and for one probe interval after
+ * repeated UNAVAILABLE failures. Probes and queue-time samples run on the
+ * client's shared scheduler.
+ */
+class EndpointBalancer implements InferTransport {
+
+    private static final long PROBE_INTERVAL_MS = 1000;
+    private static final long EJECT_NANOS = TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MS);
+    private static final int EJECT_AFTER_FAILURES = 3;
+
+    private final Replica[] replicas;
+    private final boolean weighByQueueTime;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledFuture<?> sampler;
+
+    /**
+     * @param scheduler Client's shared scheduler, used for readiness probes and queue-time samples
+     */
+    EndpointBalancer(List<Replica> replicas, ScheduledExecutorService scheduler, boolean weighByQueueTime) {
+        this.replicas = replicas.toArray(new Replica[0]);
+        this.weighByQueueTime = weighByQueueTime;
+        for (Replica replica : this.replicas) replica.watch(scheduler);
+        this.sampler = weighByQueueTime
+            ? scheduler.scheduleWithFixedDelay(this::sampleAll, 0, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        Replica replica = pick();
+        replica.outstanding.incrementAndGet();
+        CompletableFuture<T> result;
+        try {
+            result = replica.transport.infer(request, deadline, decoder);
+        } catch (RuntimeException e) {
+            replica.outstanding.decrementAndGet();
+            throw e;
+        }
+        result.whenComplete((r, e) -> {
+            replica.outstanding.decrementAndGet();
+            if (e == null) {
+                replica.failures.set(0);
+            } else if (Status.fromThrowable(e).getCode() == Status.Code.UNAVAILABLE
+                    && replica.failures.incrementAndGet() >= EJECT_AFTER_FAILURES) {
+                replica.eject();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Lowest-cost healthy replica, scanning from a rotating start so ties spread
+     * evenly. With every replica ejected, all of them are candidates again.
+     */
+    private Replica pick() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.length);
+        Replica best = null;
+        for (boolean healthyOnly : new boolean[] { true, false }) {
+            for (int k = 0; k < replicas.length; k++) {
+                Replica candidate = replicas[(start + k) % replicas.length];
+                if (healthyOnly && !candidate.healthy()) continue;
+                if (best == null || cost(candidate) < cost(best)) best = candidate;
+            }
+            if (best != null) return best;
+        }
+        return best;
+    }
+
+    /**
+     * Outstanding requests, plus one for each millisecond of recent average
+     * server queue time when queue weighting is on.
+     */
+    private double cost(Replica replica) {
+        double cost = replica.outstanding.get();
+        if (weighByQueueTime) cost += replica.queueMillis;
+        return cost;
+    }
+
+    private void sampleAll() {
+        for (Replica replica : replicas) replica.sampleQueueTime();
+    }
+
+    @Override
+    public void close() {
+        if (sampler != null) sampler.cancel(false);
+        for (Replica replica : replicas) {
+            if (replica.health != null) replica.health.close();
+            replica.transport.close();
+        }
+    }
+
+    /**
+     * One Triton server: its inference transport, and a channel for probes.
+     */
+    static class Replica {
+        final InferTransport transport;
+        private final Channel controlChannel;
+        private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub control;
+        private final String modelName;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        private HealthWatcher health;
+        // Last readiness reported by the watcher; assumed until its first probe answers
+        private volatile boolean ready = true;
+        private volatile boolean ejected;
+        private volatile long ejectedAt;
+        volatile double queueMillis;
+        private long lastQueueCount = -1;
+        private long lastQueueNs;
+
+        Replica(Channel controlChannel, InferTransport transport, String modelName) {
+            this.transport = transport;
+            this.controlChannel = controlChannel;
+            this.control = GRPCInferenceServiceGrpc.newStub(controlChannel);
+            this.modelName = modelName;
+        }
+
+        /**
+         * Start following the replica's readiness. A replica that comes back
+         * ready starts over with no failures counted.
+         */
+        void watch(ScheduledExecutorService scheduler) {
+            health = new HealthWatcher(controlChannel, modelName, scheduler, PROBE_INTERVAL_MS);
+            health.addListener(up -> {
+                if (up && !ready) failures.set(0);
+                ready = up;
+            });
+        }
+
+        /**
+         * Skip this replica for one probe interval.
+         */
+        void eject() {
+            ejectedAt = System.nanoTime();
+            ejected = true;
+            failures.set(0);
+        }
+
+        boolean healthy() {
+            if (ejected) {
+                if (System.nanoTime() - ejectedAt < EJECT_NANOS) return false;
+                ejected = false;
+            }
+            return ready;
+        }
+
+        /**
+         * Average queue time per request since the previous sample.
+         */
+        void sampleQueueTime() {
+            CompletableFuture<ModelStatisticsResponse> stats = new CompletableFuture<>();
+            control.withDeadlineAfter(PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                .modelStatistics(ModelStatisticsRequest.newBuilder().setName(modelName).build(),
+                    new FutureObserver<>(stats));
+            stats.thenAccept(response -> {
+                if (response.getModelStatsCount() == 0) return;
+                InferStatistics inference = response.getModelStats(0).getInferenceStats();
+                long count = inference.getQueue().getCount();
+                long ns = inference.getQueue().getNs();
+                synchronized (this) {
+                    if (lastQueueCount >= 0 && count > lastQueueCount) {
+                        queueMillis = (ns - lastQueueNs) / 1_000_000.0 / (count - lastQueueCount);
+                    } else if (lastQueueCount >= 0) {
+                        queueMillis = 0;
+                    }
+                    lastQueueCount = count;
+                    lastQueueNs = ns;
+                }
+            });
+        }
+    }
+}
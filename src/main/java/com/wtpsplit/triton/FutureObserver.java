@@ -0,0 +1,32 @@
+package com.wtpsplit.triton;
+
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completes a future with the response of a unary call made on an async
+ * stub, or with its error.
+ */
+final class FutureObserver<T> implements StreamObserver<T> {
+
+    private final CompletableFuture<T> future;
+
+    FutureObserver(CompletableFuture<T> future) {
+        this.future = future;
+    }
+
+    @Override
+    public void onNext(T value) {
+        future.complete(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+}
@@ -0,0 +1,125 @@
+package com.wtpsplit.triton;
+
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.ModelReadyRequest;
+import inference.GrpcService.ModelReadyResponse;
+import inference.GrpcService.ServerReadyRequest;
+import inference.GrpcService.ServerReadyResponse;
+import io.grpc.Channel;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Probes ServerReady and ModelReady in the background and caches the answer,
+ * so readiness checks cost no round trip. Both RPCs of a probe are sent
+ * together; a probe that fails or times out counts as not ready. The next
+ * probe is scheduled once the previous one has finished, so results never
+ * arrive out of order.
+ *
+ * The generated health service only has the unary Check RPC (no Watch
+ * stream), and it reports the server rather than the model, so the watcher
+ * polls the KServe readiness RPCs instead.
+ */
+class HealthWatcher {
+
+    private static final long PROBE_TIMEOUT_MS = 5000;
+
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub stub;
+    private final String modelName;
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMillis;
+    private final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Boolean> firstProbe = new CompletableFuture<>();
+    private volatile ScheduledFuture<?> next;
+    private volatile boolean ready;
+    private volatile boolean closed;
+
+    /**
+     * Start probing immediately and then {@code intervalMillis} after each probe.
+     */
+    HealthWatcher(Channel channel, String modelName, ScheduledExecutorService scheduler, long intervalMillis) {
+        this.stub = GRPCInferenceServiceGrpc.newStub(channel);
+        this.modelName = modelName;
+        this.scheduler = scheduler;
+        this.intervalMillis = intervalMillis;
+        probe();
+    }
+
+    /**
+     * Latest probe result. Only the very first call may wait, for the first probe to finish.
+     */
+    boolean isReady() {
+        if (!firstProbe.isDone()) {
+            try {
+                firstProbe.get(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Be told of every readiness change. If a probe has already answered, the
+     * listener is first called with the current readiness, so it never misses
+     * a result that arrived while it was being registered.
+     */
+    synchronized void addListener(Consumer<Boolean> listener) {
+        listeners.add(listener);
+        if (firstProbe.isDone()) listener.accept(ready);
+    }
+
+    void removeListener(Consumer<Boolean> listener) {
+        listeners.remove(listener);
+    }
+
+    private void probe() {
+        CompletableFuture<ServerReadyResponse> server = new CompletableFuture<>();
+        CompletableFuture<ModelReadyResponse> model = new CompletableFuture<>();
+        stub.withDeadlineAfter(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .serverReady(ServerReadyRequest.getDefaultInstance(), new FutureObserver<>(server));
+        stub.withDeadlineAfter(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .modelReady(ModelReadyRequest.newBuilder().setName(modelName).build(), new FutureObserver<>(model));
+        server.thenCombine(model, (s, m) -> s.getReady() && m.getReady())
+            .whenComplete((result, e) -> {
+                update(e == null && result);
+                if (!closed) {
+                    try {
+                        next = scheduler.schedule(this::probe, intervalMillis, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException ignored) {
+                        // Client closed
+                    }
+                }
+            });
+    }
+
+    /**
+     * Record a probe result. Locked together with addListener, so a new
+     * listener gets either the replayed state or this notification, in order.
+     */
+    private synchronized void update(boolean now) {
+        boolean changed = now != ready || !firstProbe.isDone();
+        ready = now;
+        firstProbe.complete(now);
+        if (changed) {
+            for (Consumer<Boolean> listener : listeners) listener.accept(now);
+        }
+    }
+
+    void close() {
+        closed = true;
+        ScheduledFuture<?> pending = next;
+        if (pending != null) pending.cancel(false);
+    }
+}
@@ -0,0 +1,158 @@
+package com.wtpsplit.triton;
+
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import io.grpc.Deadline;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sends a backup copy of a request that has not been answered within a
+ * percentile of recent response times. The first successful response wins
+ * and the other attempt is cancelled.
+ *
+ * The delay comes from the latencies of the last {@value #WINDOW} original
+ * attempts, so at the 95th percentile roughly one request in twenty is
+ * duplicated. No backups are sent until {@value #MIN_SAMPLES} latencies have
+ * been seen.
+ */
+class HedgingTransport implements InferTransport {
+
+    private static final int WINDOW = 1024;
+    private static final int MIN_SAMPLES = 128;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final InferTransport delegate;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final ScheduledExecutorService timer;
+    private final long[] samples = new long[WINDOW];
+    private long sampleCount;
+    private volatile long delayNanos = -1;
+
+    /**
+     * @param delegate Transport both attempts go through; with a channel pool or
+     *        replicas the backup lands on a different, less busy member
+     * @param timer Client's shared scheduler, used to send backups
+     * @param percentile Latency percentile after which to hedge, e.g. 0.95
+     * @param minDelayMicros Never hedge sooner than this
+     */
+    HedgingTransport(InferTransport delegate, ScheduledExecutorService timer, double percentile,
+                     long minDelayMicros) {
+        this.delegate = delegate;
+        this.timer = timer;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MICROSECONDS.toNanos(minDelayMicros);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        long delay = delayNanos;
+        if (delay < 0) {
+            long start = System.nanoTime();
+            CompletableFuture<T> attempt = delegate.infer(request, deadline, decoder);
+            attempt.whenComplete((r, e) -> {
+                if (e == null) record(System.nanoTime() - start);
+            });
+            return attempt;
+        }
+        Hedge<T> hedge = new Hedge<>(request, deadline, decoder);
+        ScheduledFuture<?> backup = timer.schedule(hedge::sendBackup, delay, TimeUnit.NANOSECONDS);
+        hedge.result.whenComplete((r, e) -> backup.cancel(false));
+        return hedge.result;
+    }
+
+    private void record(long nanos) {
+        synchronized (samples) {
+            samples[(int) (sampleCount++ % WINDOW)] = nanos;
+            if (sampleCount >= MIN_SAMPLES && sampleCount % RECOMPUTE_EVERY == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(sampleCount, WINDOW));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile * sorted.length) - 1;
+                delayNanos = Math.max(minDelayNanos, sorted[Math.max(index, 0)]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * One logical request and its attempts. The winning attempt is decided
+     * while holding the lock, so a backup is never being sent from the
+     * caller's (possibly pooled) request buffers after the caller has been
+     * answered. The result is completed after leaving the lock, so the
+     * caller's continuations never hold it up, nor the shared timer thread
+     * that sends backups.
+     */
+    private class Hedge<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final ModelInferRequest request;
+        private final Deadline deadline;
+        private final Function<ModelInferResponse, T> decoder;
+        private final long start = System.nanoTime();
+        private final CompletableFuture<T> primary;
+        private CompletableFuture<T> backup;
+        private boolean decided;
+
+        Hedge(ModelInferRequest request, Deadline deadline, Function<ModelInferResponse, T> decoder) {
+            this.request = request;
+            this.deadline = deadline;
+            this.decoder = decoder;
+            this.primary = delegate.infer(request, deadline, decoder);
+            watch(primary);
+            result.whenComplete((r, e) -> {
+                primary.cancel(false);
+                synchronized (this) {
+                    if (backup != null) backup.cancel(false);
+                }
+            });
+        }
+
+        void sendBackup() {
+            CompletableFuture<T> sent;
+            synchronized (this) {
+                if (decided || result.isDone() || deadline != null && deadline.isExpired()) return;
+                backup = delegate.infer(request, deadline, decoder);
+                sent = backup;
+            }
+            watch(sent);
+        }
+
+        private void watch(CompletableFuture<T> attempt) {
+            attempt.whenComplete((r, e) -> {
+                // A primary cancelled because the backup won took at least this long
+                if (attempt == primary && (e == null || attempt.isCancelled() && !result.isCancelled())) {
+                    record(System.nanoTime() - start);
+                }
+                synchronized (this) {
+                    if (decided || e != null && stillRunning(attempt)) return;
+                    decided = true;
+                }
+                if (e == null) {
+                    result.complete(r);
+                } else {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+                }
+            });
+        }
+
+        /**
+         * Whether an attempt other than the one that just failed may still succeed.
+         */
+        private boolean stillRunning(CompletableFuture<T> failed) {
+            CompletableFuture<T> other = failed == primary ? backup : primary;
+            return other != null && !other.isDone();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.wtpsplit.triton;
+
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import io.grpc.Deadline;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * How a {@link TritonClient} gets a ModelInferRequest to Triton and its
+ * response back.
+ */
+interface InferTransport extends Closeable {
+    
+    /**
+     * Send a request and decode its response. The decoder runs before any
+     * transport-owned memory backing the response is reused, so it may read
+     * the raw output contents without copying them. Cancelling the returned
+     * future abandons the request.
+     * 
+     * @param deadline When the caller stops waiting, or null for no limit.
+     *        Unary calls carry it as their gRPC deadline; the client enforces
+     *        it for every transport.
+     */
+    <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline, Function<ModelInferResponse, T> decoder);
+    
+    @Override
+    void close();
+    
+    /**
+     * Decode a response future, propagating cancellation back to it.
+     */
+    static <T> CompletableFuture<T> decode(CompletableFuture<ModelInferResponse> response,
+                                           Function<ModelInferResponse, T> decoder) {
+        CompletableFuture<T> result = response.thenApply(decoder);
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) response.cancel(false);
+        });
+        return result;
+    }
+}
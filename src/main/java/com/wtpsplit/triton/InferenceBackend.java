@@ -0,0 +1,40 @@
+package com.wtpsplit.triton;
+
+import io.grpc.Deadline;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Something that turns batches of token windows into logits for
+ * {@link WtpSplit}: a remote Triton server ({@link TritonClient}) or a model
+ * running in this process.
+ */
+public interface InferenceBackend extends Closeable {
+
+    /**
+     * Run batched inference without blocking. Cancelling the returned future
+     * abandons the request.
+     *
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @param firstLabelOnly Decode only label 0 of each position
+     * @param deadline When to give up, or null to wait indefinitely
+     * @param priority Scheduling class, honoured wherever the backend queues requests
+     * @return Future of logits [batch, seq_len, num_labels], or [batch, seq_len, 1] with firstLabelOnly
+     */
+    CompletableFuture<Logits> inferLogitsAsync(int[][] inputIds, int[][] attentionMask, boolean firstLabelOnly,
+                                               Deadline deadline, Priority priority);
+
+    /**
+     * Whether the backend can serve requests now.
+     */
+    boolean isReady();
+
+    /**
+     * Open connections or load resources that would otherwise be set up
+     * lazily by the first request. Does not wait for them.
+     */
+    default void connect() {
+    }
+}
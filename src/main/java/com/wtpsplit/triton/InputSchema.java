@@ -0,0 +1,86 @@
+package com.wtpsplit.triton;
+
+import inference.ModelConfigOuterClass.DataType;
+import inference.ModelConfigOuterClass.ModelConfig;
+import inference.ModelConfigOuterClass.ModelInput;
+
+/**
+ * Input datatypes, mask handling and priority levels a model accepts, read
+ * from its ModelConfig.
+ */
+final class InputSchema {
+
+    /**
+     * What the client sent before negotiation existed: INT64 ids and an INT64 mask on every request.
+     */
+    static final InputSchema DEFAULT = new InputSchema(false, true, false, false, 0, 0);
+
+    final boolean int32Ids;
+    final boolean hasMask;
+    final boolean maskOptional;
+    final boolean int32Mask;
+    final long priorityLevels;
+    final long defaultPriorityLevel;
+
+    private InputSchema(boolean int32Ids, boolean hasMask, boolean maskOptional, boolean int32Mask,
+                        long priorityLevels, long defaultPriorityLevel) {
+        this.int32Ids = int32Ids;
+        this.hasMask = hasMask;
+        this.maskOptional = maskOptional;
+        this.int32Mask = int32Mask;
+        this.priorityLevels = priorityLevels;
+        this.defaultPriorityLevel = defaultPriorityLevel;
+    }
+
+    static InputSchema fromConfig(ModelConfig config) {
+        ModelInput ids = null;
+        ModelInput mask = null;
+        for (ModelInput input : config.getInputList()) {
+            if ("input_ids".equals(input.getName())) ids = input;
+            if ("attention_mask".equals(input.getName())) mask = input;
+        }
+        long levels = config.getDynamicBatching().getPriorityLevels();
+        long defaultLevel = config.getDynamicBatching().getDefaultPriorityLevel();
+        // Configs that don't describe their inputs (e.g. auto-completed) keep the default inputs
+        if (ids == null) {
+            return new InputSchema(DEFAULT.int32Ids, DEFAULT.hasMask, DEFAULT.maskOptional, DEFAULT.int32Mask,
+                levels, defaultLevel);
+        }
+        return new InputSchema(
+            ids.getDataType() == DataType.TYPE_INT32,
+            mask != null,
+            mask != null && mask.getOptional(),
+            mask != null && mask.getDataType() == DataType.TYPE_INT32,
+            levels, defaultLevel);
+    }
+
+    /**
+     * Triton priority level for a request class, 1 being the highest, or 0 to
+     * leave the request at the model's default because priorities are off.
+     */
+    long tritonPriority(Priority priority) {
+        if (priorityLevels < 2) return 0;
+        switch (priority) {
+            case HIGH:
+                return 1;
+            case LOW:
+                return priorityLevels;
+            default:
+                return defaultPriorityLevel > 0 ? defaultPriorityLevel : (priorityLevels + 1) / 2;
+        }
+    }
+
+    /**
+     * Whether to send attention_mask for a request whose mask is (or isn't) all ones.
+     */
+    boolean sendMask(boolean allOnes) {
+        return hasMask && !(maskOptional && allOnes);
+    }
+
+    /**
+     * Distinguishes request prototypes built for different schemas and mask choices.
+     */
+    int variant(boolean withMask) {
+        return (int32Ids ? 1 : 0) | (withMask ? 2 : 0) | (int32Mask ? 4 : 0);
+    }
+}
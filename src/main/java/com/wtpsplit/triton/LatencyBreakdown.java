@@ -0,0 +1,91 @@
+package com.wtpsplit.triton;
+
+/**
+ * Where the time of an average request went over one statistics interval:
+ * Triton's queue, its three compute phases, and the rest, which is spent
+ * on the network and in (de)serialization on either side.
+ *
+ * Client and server times are per-request averages over the same interval,
+ * so {@link #networkMicros()} is their difference. A large queue time means
+ * Triton is saturated (add replicas or instances); a large network time
+ * with a short queue means the client is the bottleneck (batch more or use
+ * more channels); compute time dominating means the model itself is the cost.
+ */
+public final class LatencyBreakdown {
+
+    private final long requests;
+    private final double clientMicros;
+    private final double queueMicros;
+    private final double computeInputMicros;
+    private final double computeInferMicros;
+    private final double computeOutputMicros;
+
+    LatencyBreakdown(long requests, double clientMicros, double queueMicros, double computeInputMicros,
+                     double computeInferMicros, double computeOutputMicros) {
+        this.requests = requests;
+        this.clientMicros = clientMicros;
+        this.queueMicros = queueMicros;
+        this.computeInputMicros = computeInputMicros;
+        this.computeInferMicros = computeInferMicros;
+        this.computeOutputMicros = computeOutputMicros;
+    }
+
+    /**
+     * Successful requests this client completed during the interval.
+     */
+    public long requests() {
+        return requests;
+    }
+
+    /**
+     * Average time from handing a request to gRPC to having its logits decoded.
+     */
+    public double clientMicros() {
+        return clientMicros;
+    }
+
+    public double queueMicros() {
+        return queueMicros;
+    }
+
+    /**
+     * Average time Triton spent copying inputs to the device.
+     */
+    public double computeInputMicros() {
+        return computeInputMicros;
+    }
+
+    public double computeInferMicros() {
+        return computeInferMicros;
+    }
+
+    /**
+     * Average time Triton spent copying outputs back from the device.
+     */
+    public double computeOutputMicros() {
+        return computeOutputMicros;
+    }
+
+    /**
+     * Average server-side time: queue plus all compute phases.
+     */
+    public double serverMicros() {
+        return queueMicros + computeInputMicros + computeInferMicros + computeOutputMicros;
+    }
+
+    /**
+     * Client time not accounted for by the server: network transfer and
+     * serialization. Never negative.
+     */
+    public double networkMicros() {
+        return Math.max(0, clientMicros - serverMicros());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, client %.0fus = network %.0fus + queue %.0fus"
+                + " + compute input %.0fus / infer %.0fus / output %.0fus",
+            requests, clientMicros, networkMicros(), queueMicros,
+            computeInputMicros, computeInferMicros, computeOutputMicros);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wtpsplit.triton;
+
+/**
+ * Flat, read-only view of model logits shaped [batch, seq_len, num_labels].
+ *
+ * Values live in a single primitive array; {@link #row} and {@link #window}
+ * return views over it without copying.
+ */
+public final class Logits {
+
+    private final float[] data;
+    private final int offset;
+    private final int batchSize;
+    private final int seqLen;
+    private final int numLabels;
+
+    Logits(float[] data, int batchSize, int seqLen, int numLabels) {
+        this(data, 0, batchSize, seqLen, numLabels);
+    }
+
+    private Logits(float[] data, int offset, int batchSize, int seqLen, int numLabels) {
+        this.data = data;
+        this.offset = offset;
+        this.batchSize = batchSize;
+        this.seqLen = seqLen;
+        this.numLabels = numLabels;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public int seqLen() {
+        return seqLen;
+    }
+
+    /**
+     * Number of labels per position; 1 when only the first label was decoded.
+     */
+    public int numLabels() {
+        return numLabels;
+    }
+
+    public float get(int b, int i, int j) {
+        return data[offset + (b * seqLen + i) * numLabels + j];
+    }
+
+    /**
+     * View of one batch row as a batch of 1.
+     */
+    public Logits row(int b) {
+        return window(b, seqLen);
+    }
+
+    /**
+     * View of the first {@code length} positions of one batch row, as a batch of 1.
+     * Used to drop padding added when windows of different lengths share a batch.
+     */
+    public Logits window(int b, int length) {
+        return new Logits(data, offset + b * seqLen * numLabels, 1, length, numLabels);
+    }
+
+    /**
+     * Copy into nested arrays [batch][seq_len][num_labels].
+     */
+    public float[][][] toArray() {
+        float[][][] out = new float[batchSize][seqLen][numLabels];
+        for (int b = 0; b < batchSize; b++) {
+            for (int i = 0; i < seqLen; i++) {
+                for (int j = 0; j < numLabels; j++) {
+                    out[b][i][j] = get(b, i, j);
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,260 @@
+package com.wtpsplit.triton;
+
+import io.grpc.Deadline;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side dynamic batcher in front of {@link TritonClient}.
+ *
+ * Collects windows submitted by concurrent callers for up to {@code maxDelayMicros}
+ * or until {@code maxBatchSize} windows are queued, sends them as one padded
+ * batched request, and completes each caller's future with its own slice of
+ * the logits. Queued windows are taken in {@link Priority} order, so urgent
+ * windows fill the next batch ahead of bulk ones.
+ *
+ * Example:
+ * <pre>
+ * TritonClient client = new TritonClient("localhost", 8085, "sat_3l_sm");
+ * MicroBatcher batcher = new MicroBatcher(client, 32, 500);
+ * WtpSplit wtp = new WtpSplit(client, batcher, 0.25f, 512, 64, 32);
+ * </pre>
+ */
+public class MicroBatcher implements Closeable {
+
+    // XLM-RoBERTa padding token
+    private static final int PAD_TOKEN = 1;
+
+    private final TritonClient client;
+    private final int maxBatchSize;
+    private final boolean firstLabelOnly;
+    private final long maxDelayNanos;
+    private final PriorityLanes<Pending> queue = new PriorityLanes<>();
+    private final Semaphore inFlight;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * Create a batcher.
+     *
+     * @param client Triton client used to send batches
+     * @param maxBatchSize Maximum windows per batched request
+     * @param maxDelayMicros Maximum time the first queued window waits for company
+     * @param maxInFlight Maximum batched requests in flight at once; while all
+     *        are busy, queued windows keep accumulating into the next batch
+     * @param firstLabelOnly Decode only label 0 of each position
+     */
+    public MicroBatcher(TritonClient client, int maxBatchSize, long maxDelayMicros, int maxInFlight,
+                        boolean firstLabelOnly) {
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.firstLabelOnly = firstLabelOnly;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.dispatcher = new Thread(this::dispatchLoop, "wtpsplit-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Create a batcher with up to 4 batched requests in flight, decoding only
+     * the sentence-boundary label that {@link WtpSplit} reads.
+     */
+    public MicroBatcher(TritonClient client, int maxBatchSize, long maxDelayMicros) {
+        this(client, maxBatchSize, maxDelayMicros, 4, true);
+    }
+
+    /**
+     * Queue one window for inference.
+     *
+     * @param inputIds Token IDs of the window
+     * @param attentionMask Attention mask of the window
+     * @return Future of the window's logits, a batch of 1 trimmed to the window's own length
+     */
+    public CompletableFuture<Logits> submit(int[] inputIds, int[] attentionMask) {
+        return submit(inputIds, attentionMask, null);
+    }
+
+    /**
+     * Queue one window for inference, giving up at a deadline. A window whose
+     * deadline passes while queued is never sent; a batch carries the latest
+     * deadline among its windows, and each window's future still fails with
+     * DEADLINE_EXCEEDED at its own deadline.
+     *
+     * @param inputIds Token IDs of the window
+     * @param attentionMask Attention mask of the window
+     * @param deadline When to give up, or null to wait indefinitely
+     * @return Future of the window's logits, a batch of 1 trimmed to the window's own length
+     */
+    public CompletableFuture<Logits> submit(int[] inputIds, int[] attentionMask, Deadline deadline) {
+        return submit(inputIds, attentionMask, deadline, Priority.NORMAL);
+    }
+
+    /**
+     * Queue one window for inference at a given priority. A batch is sent
+     * with the highest priority among its windows.
+     *
+     * @param inputIds Token IDs of the window
+     * @param attentionMask Attention mask of the window
+     * @param deadline When to give up, or null to wait indefinitely
+     * @param priority Scheduling class of the window
+     * @return Future of the window's logits, a batch of 1 trimmed to the window's own length
+     */
+    public CompletableFuture<Logits> submit(int[] inputIds, int[] attentionMask, Deadline deadline,
+                                            Priority priority) {
+        Pending pending = new Pending(inputIds, attentionMask, deadline, priority);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("MicroBatcher is closed"));
+            return pending.future;
+        }
+        PriorityLanes.Entry<Pending> entry = queue.add(pending, priority);
+        // close() may have drained the queue between the check above and the add
+        if (closed && queue.remove(entry)) {
+            pending.future.completeExceptionally(new IllegalStateException("MicroBatcher is closed"));
+        }
+        return client.expireAt(pending.future, deadline);
+    }
+
+    private void dispatchLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // Closing; anything collected so far is failed below
+            }
+            if (closed || batch.isEmpty()) {
+                inFlight.release();
+                continue;
+            }
+
+            send(batch);
+            batch = new ArrayList<>(maxBatchSize);
+        }
+        failAll(batch);
+    }
+
+    /**
+     * Wait for a first window, then gather more until the batch is full or
+     * the first window has waited maxDelay.
+     */
+    private void collect(List<Pending> batch) throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Pending next = remaining > 0
+                ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                : queue.poll();
+            if (next == null) break;
+            batch.add(next);
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        // Drop windows whose caller already gave up
+        batch.removeIf(p -> p.future.isDone());
+        if (batch.isEmpty()) {
+            inFlight.release();
+            return;
+        }
+
+        int seqLen = 0;
+        Deadline deadline = batch.get(0).deadline;
+        Priority priority = batch.get(0).priority;
+        for (Pending p : batch) {
+            seqLen = Math.max(seqLen, p.inputIds.length);
+            deadline = latest(deadline, p.deadline);
+            if (p.priority.compareTo(priority) < 0) priority = p.priority;
+        }
+
+        // Right-pad every window to the longest one in the batch
+        int[][] inputIds = new int[batch.size()][];
+        int[][] attentionMask = new int[batch.size()][];
+        for (int b = 0; b < batch.size(); b++) {
+            Pending p = batch.get(b);
+            inputIds[b] = pad(p.inputIds, seqLen, PAD_TOKEN);
+            attentionMask[b] = pad(p.attentionMask, seqLen, 0);
+        }
+
+        CompletableFuture<Logits> response;
+        try {
+            response = client.inferLogitsAsync(inputIds, attentionMask, firstLabelOnly, deadline, priority);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((logits, error) -> {
+            inFlight.release();
+            for (int b = 0; b < batch.size(); b++) {
+                Pending p = batch.get(b);
+                if (error != null) {
+                    p.future.completeExceptionally(error);
+                } else {
+                    p.future.complete(logits.window(b, p.inputIds.length));
+                }
+            }
+        });
+    }
+
+    /**
+     * The later of two deadlines, where null means none.
+     */
+    private static Deadline latest(Deadline a, Deadline b) {
+        if (a == null || b == null) return null;
+        return a.isBefore(b) ? b : a;
+    }
+
+    private static int[] pad(int[] row, int length, int value) {
+        if (row.length == length) return row;
+        int[] padded = Arrays.copyOf(row, length);
+        Arrays.fill(padded, row.length, length, value);
+        return padded;
+    }
+
+    private void failAll(List<Pending> batch) {
+        IllegalStateException closedError = new IllegalStateException("MicroBatcher is closed");
+        queue.drainTo(batch);
+        for (Pending p : batch) p.future.completeExceptionally(closedError);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failAll(new ArrayList<>());
+    }
+
+    /**
+     * A window waiting to be batched.
+     */
+    private static class Pending {
+        final int[] inputIds;
+        final int[] attentionMask;
+        final Deadline deadline;
+        final Priority priority;
+        final CompletableFuture<Logits> future = new CompletableFuture<>();
+
+        Pending(int[] inputIds, int[] attentionMask, Deadline deadline, Priority priority) {
+            this.inputIds = inputIds;
+            this.attentionMask = attentionMask;
+            this.deadline = deadline;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package com.wtpsplit.triton;
+
+import com.google.protobuf.ByteString;
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.InferParameter;
+import inference.GrpcService.InferStatistics;
+import inference.GrpcService.ModelConfigRequest;
+import inference.GrpcService.ModelConfigResponse;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import inference.GrpcService.ModelMetadataRequest;
+import inference.GrpcService.ModelMetadataResponse;
+import inference.GrpcService.ModelReadyRequest;
+import inference.GrpcService.ModelReadyResponse;
+import inference.GrpcService.ModelStatistics;
+import inference.GrpcService.ModelStatisticsRequest;
+import inference.GrpcService.ModelStatisticsResponse;
+import inference.GrpcService.ModelStreamInferResponse;
+import inference.GrpcService.ServerLiveRequest;
+import inference.GrpcService.ServerLiveResponse;
+import inference.GrpcService.ServerReadyRequest;
+import inference.GrpcService.ServerReadyResponse;
+import inference.GrpcService.StatisticDuration;
+import inference.GrpcService.SystemSharedMemoryRegisterRequest;
+import inference.GrpcService.SystemSharedMemoryRegisterResponse;
+import inference.GrpcService.SystemSharedMemoryStatusRequest;
+import inference.GrpcService.SystemSharedMemoryStatusResponse;
+import inference.GrpcService.SystemSharedMemoryUnregisterRequest;
+import inference.GrpcService.SystemSharedMemoryUnregisterResponse;
+import inference.ModelConfigOuterClass.DataType;
+import inference.ModelConfigOuterClass.ModelConfig;
+import inference.ModelConfigOuterClass.ModelInput;
+import inference.ModelConfigOuterClass.ModelOutput;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.stub.StreamObserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Stand-in Triton server on loopback, for benchmarking the client without a
+ * GPU and separating client-side costs from server costs.
+ *
+ * Serves one wtpsplit-shaped model: INT64 input_ids and attention_mask in,
+ * logits [batch, seq_len, labels] out. Logits are deterministic: high after
+ * the XLM-RoBERTa tokens ".", "?" and "!", low everywhere else and on padding,
+ * so split() finds realistic sentences. Responses are delayed by a
+ * configurable latency without holding a thread. Implements the readiness,
+ * metadata, config, statistics, unary and streaming inference RPCs, and
+ * system shared memory: registered {@code /dev/shm} regions are mapped, and
+ * tensors that name one are read from and written to it.
+ *
+ * Example:
+ * <pre>
+ * try (MockTritonServer mock = MockTritonServer.builder("sat_3l_sm")
+ *         .latency(MockTritonServer.logNormal(2000, 0.5))
+ *         .start()) {
+ *     WtpSplit wtp = new WtpSplit("localhost", mock.port(), "sat_3l_sm");
+ * }
+ * </pre>
+ */
+public class MockTritonServer implements Closeable {
+
+    // XLM-RoBERTa ids of ".", "?" and "!"
+    private static final int[] BOUNDARY_TOKENS = { 5, 32, 38 };
+    private static final float BOUNDARY_LOGIT = 5f;
+    private static final float OTHER_LOGIT = -5f;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String modelName;
+    private final LongSupplier latencyMicros;
+    private final boolean fp16;
+    private final int labels;
+    private final Server server;
+    // Every thread the server runs on, so its CPU time can be summed
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final EventLoopGroup boss = new NioEventLoopGroup(1, newThread("wtpsplit-mock-boss"));
+    private final EventLoopGroup workers = new NioEventLoopGroup(0, newThread("wtpsplit-mock-worker"));
+    private final ScheduledThreadPoolExecutor delays =
+        new ScheduledThreadPoolExecutor(1, newThread("wtpsplit-mock-delay"));
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong inferences = new AtomicLong();
+    private final AtomicLong inputNanos = new AtomicLong();
+    private final AtomicLong inferNanos = new AtomicLong();
+    private final AtomicLong outputNanos = new AtomicLong();
+
+    private MockTritonServer(Builder builder) throws IOException {
+        this.modelName = builder.modelName;
+        this.latencyMicros = builder.latencyMicros;
+        this.fp16 = builder.fp16;
+        this.labels = builder.labels;
+        this.server = NettyServerBuilder
+            .forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port))
+            .bossEventLoopGroup(boss)
+            .workerEventLoopGroup(workers)
+            .channelType(NioServerSocketChannel.class)
+            .addService(new Service())
+            .directExecutor()
+            .build()
+            .start();
+    }
+
+    /**
+     * Start configuring a mock serving {@code modelName}.
+     */
+    public static Builder builder(String modelName) {
+        return new Builder(modelName);
+    }
+
+    /**
+     * Port the server listens on.
+     */
+    public int port() {
+        return server.getPort();
+    }
+
+    /**
+     * CPU time the server has used so far, to subtract from process CPU time
+     * when the client runs in the same JVM. Covers every thread the server
+     * owns: its own netty event loops, which accept connections, run HTTP/2
+     * framing and protobuf coding and, with a direct executor, the handlers,
+     * and the thread that sends delayed responses. The client's channels run
+     * on gRPC's shared event loops, never on these. Zero if the JVM cannot
+     * measure thread CPU time.
+     */
+    public long cpuNanos() {
+        if (!THREADS.isThreadCpuTimeSupported()) return 0;
+        long total = 0;
+        for (Thread thread : threads) {
+            total += Math.max(0, THREADS.getThreadCpuTime(thread.getId()));
+        }
+        return total;
+    }
+
+    /**
+     * Daemon threads named after {@code prefix}, recorded for {@link #cpuNanos()}.
+     */
+    private ThreadFactory newThread(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            threads.add(t);
+            return t;
+        };
+    }
+
+    /**
+     * Always the same latency.
+     */
+    public static LongSupplier fixed(long micros) {
+        return () -> micros;
+    }
+
+    /**
+     * Latency uniformly distributed between two bounds.
+     */
+    public static LongSupplier uniform(long minMicros, long maxMicros) {
+        return () -> ThreadLocalRandom.current().nextLong(minMicros, maxMicros + 1);
+    }
+
+    /**
+     * Log-normally distributed latency, the usual long-tailed shape of real
+     * server latencies.
+     *
+     * @param medianMicros Median latency
+     * @param sigma Spread; 0.5 puts p99 at about 3.2 times the median
+     */
+    public static LongSupplier logNormal(long medianMicros, double sigma) {
+        return () -> Math.round(medianMicros * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Score one request and send the response after the configured latency.
+     */
+    private void infer(ModelInferRequest request, StreamObserver<ModelInferResponse> responses) {
+        ModelInferResponse response;
+        try {
+            response = score(request);
+        } catch (RuntimeException e) {
+            responses.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        long latency = Math.max(0, latencyMicros.getAsLong());
+        inferNanos.addAndGet(TimeUnit.MICROSECONDS.toNanos(latency));
+        if (latency == 0) {
+            respond(responses, response);
+        } else {
+            delays.schedule(() -> respond(responses, response), latency, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void respond(StreamObserver<ModelInferResponse> responses, ModelInferResponse response) {
+        responses.onNext(response);
+        responses.onCompleted();
+    }
+
+    private ModelInferResponse score(ModelInferRequest request) {
+        long start = System.nanoTime();
+        ModelInferRequest.InferInputTensor ids = request.getInputs(0);
+        int batch = (int) ids.getShape(0);
+        int seqLen = (int) ids.getShape(1);
+        int count = batch * seqLen;
+        // Inputs in shared memory have no raw contents, so those are numbered separately
+        int raw = 0;
+        ByteBuffer[] inputs = new ByteBuffer[request.getInputsCount()];
+        for (int i = 0; i < inputs.length; i++) {
+            Map<String, InferParameter> params = request.getInputs(i).getParametersMap();
+            inputs[i] = params.containsKey("shared_memory_region")
+                ? region(params).order(ByteOrder.LITTLE_ENDIAN)
+                : request.getRawInputContents(raw++).asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int[] tokens = readInts(inputs[0], ids.getDatatype(), count);
+        int[] mask = inputs.length > 1 ? readInts(inputs[1], request.getInputs(1).getDatatype(), count) : null;
+        long decoded = System.nanoTime();
+        inputNanos.addAndGet(decoded - start);
+
+        ByteBuffer out = ByteBuffer.allocate(count * labels * (fp16 ? 2 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            boolean boundary = (mask == null || mask[i] != 0) && isBoundary(tokens[i]);
+            for (int j = 0; j < labels; j++) {
+                float logit = boundary && j == 0 ? BOUNDARY_LOGIT : OTHER_LOGIT;
+                if (fp16) out.putShort(toHalf(logit));
+                else out.putFloat(logit);
+            }
+        }
+
+        requests.incrementAndGet();
+        executions.incrementAndGet();
+        inferences.addAndGet(batch);
+        ModelInferResponse.Builder response = ModelInferResponse.newBuilder()
+            .setModelName(request.getModelName())
+            .setModelVersion("1")
+            .setId(request.getId())
+            .addOutputs(ModelInferResponse.InferOutputTensor.newBuilder()
+                .setName("logits")
+                .setDatatype(fp16 ? "FP16" : "FP32")
+                .addShape(batch)
+                .addShape(seqLen)
+                .addShape(labels));
+        Map<String, InferParameter> outputParams = request.getOutputsCount() > 0
+            ? request.getOutputs(0).getParametersMap() : Map.of();
+        if (outputParams.containsKey("shared_memory_region")) {
+            ByteBuffer target = region(outputParams);
+            if (target.remaining() < out.position()) {
+                throw new IllegalArgumentException("Output needs " + out.position() + " bytes, region has "
+                    + target.remaining());
+            }
+            target.put(out.flip());
+        } else {
+            response.addRawOutputContents(ByteString.copyFrom(out.flip()));
+        }
+        outputNanos.addAndGet(System.nanoTime() - decoded);
+        return response.build();
+    }
+
+    /**
+     * The part of a registered region that a tensor's shared_memory_* parameters point at.
+     */
+    private ByteBuffer region(Map<String, InferParameter> params) {
+        String name = params.get("shared_memory_region").getStringParam();
+        Region region = regions.get(name);
+        if (region == null) {
+            throw new IllegalArgumentException("Unknown shared memory region " + name);
+        }
+        long offset = params.containsKey("shared_memory_offset")
+            ? params.get("shared_memory_offset").getInt64Param() : 0;
+        long size = params.get("shared_memory_byte_size").getInt64Param();
+        if (offset < 0 || size < 0 || offset + size > region.byteSize) {
+            throw new IllegalArgumentException("Tensor lies outside shared memory region " + name);
+        }
+        return region.buffer.duplicate().position((int) offset).limit((int) (offset + size)).slice();
+    }
+
+    private static int[] readInts(ByteBuffer buf, String datatype, int count) {
+        boolean int32 = "INT32".equals(datatype);
+        if (buf.remaining() != count * (int32 ? 4 : 8)) {
+            throw new IllegalArgumentException("Expected " + count + " " + datatype + " values");
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = int32 ? buf.getInt() : (int) buf.getLong();
+        }
+        return values;
+    }
+
+    private static boolean isBoundary(int token) {
+        for (int boundary : BOUNDARY_TOKENS) {
+            if (token == boundary) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Float to IEEE 754 binary16 for the small, exactly representable logits used here.
+     */
+    private static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        if (value == 0) return (short) sign;
+        int exp = ((bits >>> 23) & 0xFF) - 127 + 15;
+        return (short) (sign | (exp << 10) | ((bits >>> 13) & 0x3FF));
+    }
+
+    private static StatisticDuration duration(long count, long nanos) {
+        return StatisticDuration.newBuilder().setCount(count).setNs(nanos).build();
+    }
+
+    /**
+     * A registered system shared memory region, mapped into this process.
+     */
+    private static class Region {
+        final String key;
+        final long offset;
+        final long byteSize;
+        final ByteBuffer buffer;
+
+        Region(String key, long offset, long byteSize) throws IOException {
+            this.key = key;
+            this.offset = offset;
+            this.byteSize = byteSize;
+            try (FileChannel fc = FileChannel.open(Path.of("/dev/shm", key), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                this.buffer = fc.map(FileChannel.MapMode.READ_WRITE, offset, byteSize);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        regions.clear();
+        server.shutdownNow();
+        delays.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boss.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        workers.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+
+    private class Service extends GRPCInferenceServiceGrpc.GRPCInferenceServiceImplBase {
+
+        @Override
+        public void serverLive(ServerLiveRequest request, StreamObserver<ServerLiveResponse> responses) {
+            responses.onNext(ServerLiveResponse.newBuilder().setLive(true).build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void serverReady(ServerReadyRequest request, StreamObserver<ServerReadyResponse> responses) {
+            responses.onNext(ServerReadyResponse.newBuilder().setReady(true).build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void modelReady(ModelReadyRequest request, StreamObserver<ModelReadyResponse> responses) {
+            responses.onNext(ModelReadyResponse.newBuilder().setReady(modelName.equals(request.getName())).build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void modelMetadata(ModelMetadataRequest request, StreamObserver<ModelMetadataResponse> responses) {
+            responses.onNext(ModelMetadataResponse.newBuilder()
+                .setName(modelName)
+                .addVersions("1")
+                .setPlatform("mock")
+                .addInputs(tensor("input_ids", "INT64", -1, -1))
+                .addInputs(tensor("attention_mask", "INT64", -1, -1))
+                .addOutputs(tensor("logits", fp16 ? "FP16" : "FP32", -1, -1, labels))
+                .build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void modelConfig(ModelConfigRequest request, StreamObserver<ModelConfigResponse> responses) {
+            responses.onNext(ModelConfigResponse.newBuilder()
+                .setConfig(ModelConfig.newBuilder()
+                    .setName(modelName)
+                    .setPlatform("mock")
+                    .addInput(ModelInput.newBuilder().setName("input_ids").setDataType(DataType.TYPE_INT64)
+                        .addDims(-1).addDims(-1))
+                    .addInput(ModelInput.newBuilder().setName("attention_mask").setDataType(DataType.TYPE_INT64)
+                        .addDims(-1).addDims(-1))
+                    .addOutput(ModelOutput.newBuilder().setName("logits")
+                        .setDataType(fp16 ? DataType.TYPE_FP16 : DataType.TYPE_FP32)
+                        .addDims(-1).addDims(-1).addDims(labels)))
+                .build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void modelStatistics(ModelStatisticsRequest request,
+                                    StreamObserver<ModelStatisticsResponse> responses) {
+            long count = requests.get();
+            responses.onNext(ModelStatisticsResponse.newBuilder()
+                .addModelStats(ModelStatistics.newBuilder()
+                    .setName(modelName)
+                    .setVersion("1")
+                    .setInferenceCount(inferences.get())
+                    .setExecutionCount(executions.get())
+                    .setInferenceStats(InferStatistics.newBuilder()
+                        .setSuccess(duration(count, inputNanos.get() + inferNanos.get() + outputNanos.get()))
+                        .setQueue(duration(count, 0))
+                        .setComputeInput(duration(count, inputNanos.get()))
+                        .setComputeInfer(duration(count, inferNanos.get()))
+                        .setComputeOutput(duration(count, outputNanos.get()))))
+                .build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void modelInfer(ModelInferRequest request, StreamObserver<ModelInferResponse> responses) {
+            infer(request, responses);
+        }
+
+        @Override
+        public StreamObserver<ModelInferRequest> modelStreamInfer(
+                StreamObserver<ModelStreamInferResponse> responses) {
+            return new StreamObserver<ModelInferRequest>() {
+                @Override
+                public void onNext(ModelInferRequest request) {
+                    infer(request, new StreamObserver<ModelInferResponse>() {
+                        @Override
+                        public void onNext(ModelInferResponse response) {
+                            // Delayed responses of one stream arrive from different threads
+                            synchronized (responses) {
+                                responses.onNext(ModelStreamInferResponse.newBuilder()
+                                    .setInferResponse(response).build());
+                            }
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            // Like Triton, echo the request id so the client can route the error
+                            synchronized (responses) {
+                                responses.onNext(ModelStreamInferResponse.newBuilder()
+                                    .setErrorMessage(String.valueOf(t.getMessage()))
+                                    .setInferResponse(ModelInferResponse.newBuilder().setId(request.getId()))
+                                    .build());
+                            }
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    synchronized (responses) {
+                        responses.onCompleted();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void systemSharedMemoryRegister(SystemSharedMemoryRegisterRequest request,
+                                               StreamObserver<SystemSharedMemoryRegisterResponse> responses) {
+            if (regions.containsKey(request.getName())) {
+                responses.onError(Status.ALREADY_EXISTS
+                    .withDescription("Shared memory region " + request.getName() + " already registered")
+                    .asRuntimeException());
+                return;
+            }
+            try {
+                regions.put(request.getName(), new Region(request.getKey(), request.getOffset(),
+                    request.getByteSize()));
+            } catch (IOException | RuntimeException e) {
+                responses.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Cannot map " + request.getKey() + ": " + e.getMessage())
+                    .asRuntimeException());
+                return;
+            }
+            responses.onNext(SystemSharedMemoryRegisterResponse.getDefaultInstance());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void systemSharedMemoryStatus(SystemSharedMemoryStatusRequest request,
+                                             StreamObserver<SystemSharedMemoryStatusResponse> responses) {
+            SystemSharedMemoryStatusResponse.Builder status = SystemSharedMemoryStatusResponse.newBuilder();
+            regions.forEach((name, region) -> {
+                if (request.getName().isEmpty() || request.getName().equals(name)) {
+                    status.putRegions(name, SystemSharedMemoryStatusResponse.RegionStatus.newBuilder()
+                        .setName(name)
+                        .setKey(region.key)
+                        .setOffset(region.offset)
+                        .setByteSize(region.byteSize)
+                        .build());
+                }
+            });
+            responses.onNext(status.build());
+            responses.onCompleted();
+        }
+
+        @Override
+        public void systemSharedMemoryUnregister(SystemSharedMemoryUnregisterRequest request,
+                                                 StreamObserver<SystemSharedMemoryUnregisterResponse> responses) {
+            // An empty name unregisters every region
+            if (request.getName().isEmpty()) regions.clear();
+            else regions.remove(request.getName());
+            responses.onNext(SystemSharedMemoryUnregisterResponse.getDefaultInstance());
+            responses.onCompleted();
+        }
+
+        private ModelMetadataResponse.TensorMetadata tensor(String name, String datatype, long... shape) {
+            ModelMetadataResponse.TensorMetadata.Builder tensor = ModelMetadataResponse.TensorMetadata.newBuilder()
+                .setName(name)
+                .setDatatype(datatype);
+            for (long dim : shape) tensor.addShape(dim);
+            return tensor.build();
+        }
+    }
+
+    /**
+     * Configuration for a {@link MockTritonServer}.
+     */
+    public static class Builder {
+        private final String modelName;
+        private int port;
+        private LongSupplier latencyMicros = fixed(0);
+        private boolean fp16;
+        private int labels = 1;
+
+        private Builder(String modelName) {
+            this.modelName = modelName;
+        }
+
+        /**
+         * Port to listen on; 0 (the default) picks a free one, see {@link MockTritonServer#port()}.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Simulated inference time per request, in microseconds, drawn from
+         * {@link #fixed}, {@link #uniform}, {@link #logNormal} or any supplier.
+         */
+        public Builder latency(LongSupplier micros) {
+            this.latencyMicros = micros;
+            return this;
+        }
+
+        /**
+         * Return FP16 logits, like a TensorRT engine, instead of FP32.
+         */
+        public Builder fp16() {
+            this.fp16 = true;
+            return this;
+        }
+
+        /**
+         * Labels per position (default 1); only label 0 marks boundaries.
+         */
+        public Builder labels(int labels) {
+            if (labels < 1) throw new IllegalArgumentException("labels must be at least 1");
+            this.labels = labels;
+            return this;
+        }
+
+        public MockTritonServer start() throws IOException {
+            return new MockTritonServer(this);
+        }
+    }
+}
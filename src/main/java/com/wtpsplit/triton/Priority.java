@@ -0,0 +1,18 @@
+package com.wtpsplit.triton;
+
+/**
+ * Scheduling class of a request. Higher classes leave client-side queues
+ * first and, when the model config enables priority levels, are sent with a
+ * higher Triton request priority.
+ */
+public enum Priority {
+    
+    /** Interactive traffic that someone is waiting on. */
+    HIGH,
+    
+    /** The default. */
+    NORMAL,
+    
+    /** Bulk work such as backfills; runs when nothing more urgent is queued. */
+    LOW
+}
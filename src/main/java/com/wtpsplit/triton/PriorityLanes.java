@@ -0,0 +1,180 @@
+package com.wtpsplit.triton;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking queue with one FIFO lane per {@link Priority}. The highest
+ * non-empty lane is served first. To keep a steady stream of urgent work from
+ * starving bulk work, one in every {@value #RESCUE_EVERY} entries served is
+ * instead the oldest lower-lane entry that has waited longer than
+ * {@value #MAX_WAIT_MS} ms, if there is one. Entries can be withdrawn
+ * from anywhere in the queue in constant time.
+ */
+class PriorityLanes<E> {
+
+    private static final long MAX_WAIT_MS = 200;
+    private static final int RESCUE_EVERY = 4;
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+    private static final Priority[] CLASSES = Priority.values();
+
+    private final LinkedHashSet<Entry<E>>[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+    private int sinceRescue;
+
+    @SuppressWarnings("unchecked")
+    PriorityLanes() {
+        this.lanes = new LinkedHashSet[CLASSES.length];
+        for (int i = 0; i < lanes.length; i++) lanes[i] = new LinkedHashSet<>();
+    }
+
+    /**
+     * Queue an element.
+     *
+     * @return Handle for withdrawing the element with {@link #remove}
+     */
+    Entry<E> add(E element, Priority priority) {
+        Entry<E> entry = new Entry<>(element, priority.ordinal(), System.nanoTime());
+        lock.lock();
+        try {
+            lanes[entry.lane].add(entry);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return entry;
+    }
+
+    /**
+     * Withdraw an element that has not been served yet.
+     *
+     * @return Whether it was still queued
+     */
+    boolean remove(Entry<E> entry) {
+        lock.lock();
+        try {
+            if (!lanes[entry.lane].remove(entry)) return false;
+            size--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Next entry, or null if empty.
+     */
+    E poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Next entry, waiting up to the timeout for one to arrive.
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) return null;
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) notEmpty.await();
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return size == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove everything, lowest lanes last, in the order it would have been served.
+     */
+    void drainTo(Collection<? super E> out) {
+        lock.lock();
+        try {
+            for (LinkedHashSet<Entry<E>> lane : lanes) {
+                for (Entry<E> entry : lane) out.add(entry.element);
+                lane.clear();
+            }
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private E next() {
+        if (size == 0) return null;
+        long now = System.nanoTime();
+        LinkedHashSet<Entry<E>> chosen = null;
+        if (++sinceRescue >= RESCUE_EVERY) {
+            // The longest-starved head of a lower lane
+            for (int i = 1; i < lanes.length; i++) {
+                if (lanes[i].isEmpty()) continue;
+                Entry<E> head = lanes[i].iterator().next();
+                if (now - head.enqueued > MAX_WAIT_NANOS
+                        && (chosen == null || head.enqueued - chosen.iterator().next().enqueued < 0)) {
+                    chosen = lanes[i];
+                }
+            }
+            if (chosen != null) sinceRescue = 0;
+        }
+        if (chosen == null) {
+            for (LinkedHashSet<Entry<E>> lane : lanes) {
+                if (!lane.isEmpty()) {
+                    chosen = lane;
+                    break;
+                }
+            }
+        }
+        size--;
+        Iterator<Entry<E>> head = chosen.iterator();
+        Entry<E> entry = head.next();
+        head.remove();
+        return entry.element;
+    }
+
+    /**
+     * A queued element. Compared by identity, so the same element can be queued twice.
+     */
+    static final class Entry<E> {
+        final E element;
+        final int lane;
+        final long enqueued;
+
+        Entry(E element, int lane, long enqueued) {
+            this.element = element;
+            this.lane = lane;
+            this.enqueued = enqueued;
+        }
+    }
+}
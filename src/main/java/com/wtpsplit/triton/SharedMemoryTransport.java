@@ -0,0 +1,246 @@
+package com.wtpsplit.triton;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.InferParameter;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import inference.GrpcService.ModelMetadataRequest;
+import inference.GrpcService.ModelMetadataResponse;
+import inference.GrpcService.SystemSharedMemoryRegisterRequest;
+import inference.GrpcService.SystemSharedMemoryStatusRequest;
+import inference.GrpcService.SystemSharedMemoryStatusResponse;
+import inference.GrpcService.SystemSharedMemoryUnregisterRequest;
+import io.grpc.Deadline;
+import io.grpc.Channel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Passes tensors through POSIX shared memory for a Triton on the same host.
+ *
+ * Each slot is a {@code /dev/shm} file, mapped into the JVM and registered
+ * with Triton through SystemSharedMemoryRegister, that holds one request's
+ * inputs followed by room for its output. Requests reference the slot through
+ * the {@code shared_memory_*} tensor parameters, so only metadata crosses the
+ * socket, and logits are decoded straight out of the mapped output area.
+ *
+ * Requests that do not fit a slot, or arrive while every slot is busy, go
+ * through the delegate transport with their tensors inline.
+ */
+class SharedMemoryTransport implements InferTransport {
+
+    private static final String SHM_DIR = "/dev/shm";
+
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceBlockingStub stub;
+    private final InferTransport delegate;
+    private final List<Slot> slots = new ArrayList<>();
+    private final BlockingQueue<Slot> free = new LinkedBlockingQueue<>();
+    private final int inputCapacity;
+    private final int outputCapacity;
+    private final int outputBytesPerToken;
+
+    /**
+     * Map and register the slots.
+     *
+     * @param channel Channel used for the shared-memory control RPCs
+     * @param delegate Transport that carries the requests themselves
+     * @param modelName Model whose output datatype and label count size the output area
+     * @param slotCount Number of requests that can use shared memory at once
+     * @param maxTokens Largest batch * seq_len a slot can hold
+     */
+    SharedMemoryTransport(Channel channel, InferTransport delegate, String modelName,
+                          int slotCount, int maxTokens) {
+        this.stub = GRPCInferenceServiceGrpc.newBlockingStub(channel);
+        this.delegate = delegate;
+
+        ModelMetadataResponse metadata = stub.modelMetadata(
+            ModelMetadataRequest.newBuilder().setName(modelName).build());
+        var output = metadata.getOutputs(0);
+        long labels = output.getShapeCount() > 0 ? output.getShape(output.getShapeCount() - 1) : 1;
+        this.outputBytesPerToken = (int) Math.max(1, labels) * ("FP16".equals(output.getDatatype()) ? 2 : 4);
+
+        // Room for INT64 input_ids and attention_mask
+        this.inputCapacity = maxTokens * 8 * 2;
+        this.outputCapacity = maxTokens * outputBytesPerToken;
+
+        String prefix = "wtpsplit_" + ProcessHandle.current().pid() + "_" + Long.toHexString(System.nanoTime());
+        try {
+            for (int i = 0; i < slotCount; i++) {
+                Slot slot = new Slot(prefix + "_" + i, inputCapacity + outputCapacity);
+                slots.add(slot);
+                stub.systemSharedMemoryRegister(SystemSharedMemoryRegisterRequest.newBuilder()
+                    .setName(slot.name)
+                    .setKey("/" + slot.name)
+                    .setOffset(0)
+                    .setByteSize(slot.buffer.capacity())
+                    .build());
+                free.add(slot);
+            }
+            verifyRegistered();
+        } catch (RuntimeException e) {
+            releaseSlots();
+            throw e;
+        }
+    }
+
+    private void verifyRegistered() {
+        SystemSharedMemoryStatusResponse status = stub.systemSharedMemoryStatus(
+            SystemSharedMemoryStatusRequest.newBuilder().build());
+        for (Slot slot : slots) {
+            if (!status.containsRegions(slot.name)) {
+                throw new IllegalStateException("Triton did not register shared memory region " + slot.name);
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        long tokens = request.getInputs(0).getShape(0) * request.getInputs(0).getShape(1);
+        int inputBytes = 0;
+        for (ByteString content : request.getRawInputContentsList()) inputBytes += content.size();
+        if (inputBytes > inputCapacity || tokens * outputBytesPerToken > outputCapacity
+                || request.getOutputsCount() != 1) {
+            return delegate.infer(request, deadline, decoder);
+        }
+
+        Slot slot = free.poll();
+        if (slot == null) {
+            return delegate.infer(request, deadline, decoder);
+        }
+
+        ModelInferRequest shmRequest;
+        try {
+            shmRequest = slot.bind(request);
+        } catch (RuntimeException e) {
+            free.add(slot);
+            throw e;
+        }
+
+        // Not cancellable: Triton may still write into the slot after the RPC is
+        // cancelled, so the slot is only recycled once the call has finished.
+        return delegate.infer(shmRequest, deadline, Function.identity()).handle((response, error) -> {
+            try {
+                if (error != null) throw unwrap(error);
+                return decoder.apply(slot.withOutput(response));
+            } finally {
+                free.add(slot);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        releaseSlots();
+        delegate.close();
+    }
+
+    private void releaseSlots() {
+        for (Slot slot : slots) {
+            try {
+                stub.systemSharedMemoryUnregister(
+                    SystemSharedMemoryUnregisterRequest.newBuilder().setName(slot.name).build());
+            } catch (RuntimeException e) {
+                // Server gone; nothing left to unregister
+            }
+            slot.delete();
+        }
+        slots.clear();
+        free.clear();
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+        return cause instanceof RuntimeException re ? re : new CompletionException(cause);
+    }
+
+    private static InferParameter stringParam(String value) {
+        return InferParameter.newBuilder().setStringParam(value).build();
+    }
+
+    private static InferParameter intParam(long value) {
+        return InferParameter.newBuilder().setInt64Param(value).build();
+    }
+
+    /**
+     * One mapped and registered region: inputs at the front, output after them.
+     */
+    private class Slot {
+        final String name;
+        final Path file;
+        final MappedByteBuffer buffer;
+
+        Slot(String name, int size) {
+            this.name = name;
+            this.file = Path.of(SHM_DIR, name);
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map shared memory " + file, e);
+            }
+        }
+
+        /**
+         * Copy the request's inputs into this slot and point every tensor at it.
+         */
+        ModelInferRequest bind(ModelInferRequest request) {
+            ModelInferRequest.Builder builder = request.toBuilder().clearRawInputContents();
+            int offset = 0;
+            for (int i = 0; i < request.getRawInputContentsCount(); i++) {
+                ByteString content = request.getRawInputContents(i);
+                content.copyTo(buffer.duplicate().position(offset));
+                builder.getInputsBuilder(i)
+                    .putParameters("shared_memory_region", stringParam(name))
+                    .putParameters("shared_memory_offset", intParam(offset))
+                    .putParameters("shared_memory_byte_size", intParam(content.size()));
+                offset += content.size();
+            }
+            builder.getOutputsBuilder(0)
+                .putParameters("shared_memory_region", stringParam(name))
+                .putParameters("shared_memory_offset", intParam(inputCapacity))
+                .putParameters("shared_memory_byte_size", intParam(outputCapacity));
+            return builder.build();
+        }
+
+        /**
+         * Attach the output area, as written by Triton, as the response's raw output.
+         */
+        ModelInferResponse withOutput(ModelInferResponse response) {
+            var output = response.getOutputs(0);
+            long count = 1;
+            for (long dim : output.getShapeList()) count *= dim;
+            int bytes = (int) count * ("FP16".equals(output.getDatatype()) ? 2 : 4);
+            ByteBuffer view = buffer.duplicate().position(inputCapacity).limit(inputCapacity + bytes).slice();
+            return response.toBuilder()
+                .clearRawOutputContents()
+                .addRawOutputContents(UnsafeByteOperations.unsafeWrap(view))
+                .build();
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Left for the OS to clean up with /dev/shm
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.wtpsplit.triton;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide, reference-counted tokenizers. Every {@link WtpSplit} for the
+ * same tokenizer shares one native handle, which is thread-safe for encoding;
+ * the handle is freed when the last of them is closed. Tokenizers can come
+ * from a local file or the classpath, so hosts without network access never
+ * touch the Hugging Face hub.
+ */
+final class SharedTokenizers {
+
+    /** System property naming a tokenizer.json, or the directory holding it, to use instead of the hub */
+    static final String PROPERTY = "wtpsplit.tokenizer";
+    /** Classpath location of a tokenizer bundled into the jar */
+    static final String RESOURCE = "wtpsplit/tokenizer.json";
+
+    private static final String FILE = "file:";
+    private static final String CLASSPATH = "classpath:";
+    private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+    private SharedTokenizers() {
+    }
+
+    /**
+     * Where to load a tokenizer from when none is given: the file named by the
+     * {@value #PROPERTY} system property, else {@value #RESOURCE} on the
+     * classpath, else the Hugging Face hub (or its local cache).
+     */
+    static String defaultSource(String hubName) {
+        String configured = System.getProperty(PROPERTY);
+        if (configured != null && !configured.isBlank()) {
+            return fileSource(Path.of(configured));
+        }
+        if (SharedTokenizers.class.getClassLoader().getResource(RESOURCE) != null) {
+            return CLASSPATH + RESOURCE;
+        }
+        return hubName;
+    }
+
+    /**
+     * Source for a tokenizer.json file, or a directory holding one.
+     */
+    static String fileSource(Path path) {
+        Path file = Files.isDirectory(path) ? path.resolve("tokenizer.json") : path;
+        return FILE + file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Borrow the tokenizer for a source, loading it on first use. Each call
+     * must be paired with one {@link #release}.
+     *
+     * @param source Hugging Face model name, or one from {@link #defaultSource} or {@link #fileSource}
+     */
+    static synchronized HuggingFaceTokenizer acquire(String source) throws IOException {
+        Entry entry = ENTRIES.get(source);
+        if (entry == null) {
+            entry = new Entry(load(source));
+            ENTRIES.put(source, entry);
+        }
+        entry.refs++;
+        return entry.tokenizer;
+    }
+
+    /**
+     * Give back a tokenizer obtained from {@link #acquire}, closing it if no one else holds it.
+     */
+    static synchronized void release(String source) {
+        Entry entry = ENTRIES.get(source);
+        if (entry == null) return;
+        if (--entry.refs == 0) {
+            ENTRIES.remove(source);
+            entry.tokenizer.close();
+        }
+    }
+
+    private static HuggingFaceTokenizer load(String source) throws IOException {
+        if (source.startsWith(FILE)) {
+            return HuggingFaceTokenizer.newInstance(Path.of(source.substring(FILE.length())));
+        }
+        if (source.startsWith(CLASSPATH)) {
+            String resource = source.substring(CLASSPATH.length());
+            try (InputStream in = SharedTokenizers.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) throw new IOException("Tokenizer not found on classpath: " + resource);
+                return HuggingFaceTokenizer.newInstance(in, null);
+            }
+        }
+        return HuggingFaceTokenizer.newInstance(source);
+    }
+
+    private static final class Entry {
+        final HuggingFaceTokenizer tokenizer;
+        int refs;
+
+        Entry(HuggingFaceTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+    }
+}
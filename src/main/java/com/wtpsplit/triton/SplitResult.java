@@ -0,0 +1,42 @@
+package com.wtpsplit.triton;
+
+import java.util.List;
+
+/**
+ * Sentences from a split that ran under a time budget.
+ *
+ * When the budget ran out before every window was scored, the result is
+ * partial: text covered only by unscored windows has no split points, so it
+ * stays joined to the neighbouring sentence.
+ */
+public final class SplitResult {
+
+    private final List<String> sentences;
+    private final int windowsCompleted;
+    private final int windowsTotal;
+
+    SplitResult(List<String> sentences, int windowsCompleted, int windowsTotal) {
+        this.sentences = sentences;
+        this.windowsCompleted = windowsCompleted;
+        this.windowsTotal = windowsTotal;
+    }
+
+    public List<String> sentences() {
+        return sentences;
+    }
+
+    /**
+     * Whether every window was scored before the budget ran out.
+     */
+    public boolean isComplete() {
+        return windowsCompleted == windowsTotal;
+    }
+
+    public int windowsCompleted() {
+        return windowsCompleted;
+    }
+
+    public int windowsTotal() {
+        return windowsTotal;
+    }
+}
@@ -0,0 +1,173 @@
+package com.wtpsplit.triton;
+
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.InferStatistics;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import inference.GrpcService.ModelStatistics;
+import inference.GrpcService.ModelStatisticsRequest;
+import inference.GrpcService.ModelStatisticsResponse;
+import inference.GrpcService.StatisticDuration;
+import io.grpc.Channel;
+import io.grpc.Deadline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Times every request on the client and periodically polls ModelStatistics
+ * from each replica, so the two can be set side by side in a
+ * {@link LatencyBreakdown}.
+ *
+ * Each attempt is timed separately, including hedged backups, because
+ * Triton counts those as separate requests too. Failed and cancelled
+ * requests are left out on both sides. Cumulative server counters are
+ * turned into per-interval deltas; a replica whose counters went backwards
+ * (it restarted) is skipped for one interval.
+ */
+class StatisticsPoller implements InferTransport {
+
+    private static final long RPC_TIMEOUT_MS = 5000;
+    // Counter pairs per replica: queue, compute_input, compute_infer, compute_output
+    private static final int PHASES = 4;
+
+    private final InferTransport delegate;
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub[] stubs;
+    private final String modelName;
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMillis;
+    private final LongAdder clientCount = new LongAdder();
+    private final LongAdder clientNanos = new LongAdder();
+    // Last cumulative counters per replica, null until first seen
+    private final long[][] last;
+    private volatile LatencyBreakdown latest;
+    private volatile ScheduledFuture<?> next;
+    private volatile boolean closed;
+
+    /**
+     * Start polling immediately and then {@code intervalMillis} after each poll.
+     *
+     * @param controlChannels One channel per replica to read statistics from
+     */
+    StatisticsPoller(InferTransport delegate, List<? extends Channel> controlChannels, String modelName,
+                     ScheduledExecutorService scheduler, long intervalMillis) {
+        this.delegate = delegate;
+        this.stubs = new GRPCInferenceServiceGrpc.GRPCInferenceServiceStub[controlChannels.size()];
+        for (int i = 0; i < stubs.length; i++) stubs[i] = GRPCInferenceServiceGrpc.newStub(controlChannels.get(i));
+        this.last = new long[stubs.length][];
+        this.modelName = modelName;
+        this.scheduler = scheduler;
+        this.intervalMillis = intervalMillis;
+        poll();
+    }
+
+    /**
+     * Breakdown over the last complete interval, or null before the second poll.
+     */
+    LatencyBreakdown latest() {
+        return latest;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        long start = System.nanoTime();
+        CompletableFuture<T> call = delegate.infer(request, deadline, decoder);
+        call.whenComplete((r, e) -> {
+            if (e != null) return;
+            clientNanos.add(System.nanoTime() - start);
+            clientCount.increment();
+        });
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void poll() {
+        ModelStatisticsRequest request = ModelStatisticsRequest.newBuilder().setName(modelName).build();
+        CompletableFuture<ModelStatisticsResponse>[] responses = new CompletableFuture[stubs.length];
+        for (int i = 0; i < stubs.length; i++) {
+            responses[i] = new CompletableFuture<>();
+            stubs[i].withDeadlineAfter(RPC_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .modelStatistics(request, new FutureObserver<>(responses[i]));
+        }
+        CompletableFuture.allOf(responses).whenComplete((r, e) -> {
+            update(responses);
+            if (!closed) {
+                try {
+                    next = scheduler.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ignored) {
+                    // Client closed
+                }
+            }
+        });
+    }
+
+    private synchronized void update(CompletableFuture<ModelStatisticsResponse>[] responses) {
+        long[] delta = new long[PHASES * 2];
+        boolean compared = false;
+        for (int i = 0; i < responses.length; i++) {
+            // A replica that did not answer contributes nothing and starts over next time
+            if (responses[i].isCompletedExceptionally()) {
+                last[i] = null;
+                continue;
+            }
+            long[] now = counters(responses[i].join());
+            long[] before = last[i];
+            last[i] = now;
+            if (before == null) continue;
+            compared = true;
+            if (!isMonotonic(before, now)) continue;
+            for (int k = 0; k < now.length; k++) delta[k] += now[k] - before[k];
+        }
+
+        long count = clientCount.sumThenReset();
+        long nanos = clientNanos.sumThenReset();
+        if (!compared) return;
+        latest = new LatencyBreakdown(count, average(nanos, count),
+            average(delta[1], delta[0]), average(delta[3], delta[2]),
+            average(delta[5], delta[4]), average(delta[7], delta[6]));
+    }
+
+    /**
+     * Cumulative count and ns of each phase, summed over the model's versions.
+     */
+    private static long[] counters(ModelStatisticsResponse response) {
+        long[] counters = new long[PHASES * 2];
+        for (ModelStatistics model : response.getModelStatsList()) {
+            InferStatistics stats = model.getInferenceStats();
+            StatisticDuration[] phases = {
+                stats.getQueue(), stats.getComputeInput(), stats.getComputeInfer(), stats.getComputeOutput()
+            };
+            for (int p = 0; p < PHASES; p++) {
+                counters[p * 2] += phases[p].getCount();
+                counters[p * 2 + 1] += phases[p].getNs();
+            }
+        }
+        return counters;
+    }
+
+    private static boolean isMonotonic(long[] before, long[] now) {
+        for (int k = 0; k < now.length; k++) {
+            if (now[k] < before[k]) return false;
+        }
+        return true;
+    }
+
+    private static double average(long nanos, long count) {
+        return count > 0 ? nanos / 1000.0 / count : 0;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> pending = next;
+        if (pending != null) pending.cancel(false);
+        delegate.close();
+    }
+}
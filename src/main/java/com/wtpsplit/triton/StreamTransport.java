@@ -0,0 +1,161 @@
+package com.wtpsplit.triton;
+
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import inference.GrpcService.ModelStreamInferResponse;
+import io.grpc.Deadline;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Multiplexes requests over long-lived bidirectional ModelStreamInfer streams.
+ *
+ * Each request is tagged with a unique id and responses, which may arrive out
+ * of order, are matched back by that id. A broken stream fails its pending
+ * requests and is reopened on the next call. So does an error response
+ * whose id matches no pending request, since it may belong to any of them.
+ */
+class StreamTransport implements InferTransport {
+
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub asyncStub;
+    private final Stream[] streams;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong ids = new AtomicLong();
+    private volatile boolean closed;
+
+    StreamTransport(Channel channel, int streamCount) {
+        this.asyncStub = GRPCInferenceServiceGrpc.newStub(channel);
+        this.streams = new Stream[streamCount];
+        for (int i = 0; i < streamCount; i++) streams[i] = new Stream();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                Status.UNAVAILABLE.withDescription("Transport closed").asRuntimeException());
+        }
+        // A stream outlives any one request, so the deadline is only enforced
+        // client-side; cancelling the future drops the request from pending
+        Stream stream = streams[Math.floorMod(next.getAndIncrement(), streams.length)];
+        String id = Long.toString(ids.incrementAndGet());
+        return InferTransport.decode(stream.send(request.toBuilder().setId(id).build(), id), decoder);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Stream stream : streams) stream.shutdown();
+    }
+
+    /**
+     * A slot holding at most one open stream, reopened after failure.
+     */
+    private class Stream {
+        private Connection current;
+
+        synchronized CompletableFuture<ModelInferResponse> send(ModelInferRequest request, String id) {
+            if (current == null) current = new Connection(this);
+            return current.send(request, id);
+        }
+
+        synchronized void shutdown() {
+            if (current != null) {
+                current.requests.onCompleted();
+                current.failPending(Status.UNAVAILABLE.withDescription("Transport closed").asRuntimeException());
+                current = null;
+            }
+        }
+
+        /**
+         * Forget a broken connection so the next send opens a fresh one.
+         */
+        synchronized void reset(Connection broken) {
+            if (current == broken) current = null;
+        }
+
+        /**
+         * Cancel a connection that is still open but can no longer be trusted.
+         */
+        synchronized void abandon(Connection broken, Throwable cause) {
+            if (current != broken) return;
+            current = null;
+            broken.requests.onError(cause);
+        }
+    }
+
+    /**
+     * One open bidirectional stream and the requests awaiting a response on it.
+     */
+    private class Connection implements StreamObserver<ModelStreamInferResponse> {
+        private final Stream slot;
+        private final Map<String, CompletableFuture<ModelInferResponse>> pending = new ConcurrentHashMap<>();
+        private final StreamObserver<ModelInferRequest> requests;
+
+        Connection(Stream slot) {
+            this.slot = slot;
+            this.requests = asyncStub.modelStreamInfer(this);
+        }
+
+        // Called with the slot lock held, which also serializes onNext on the request stream
+        CompletableFuture<ModelInferResponse> send(ModelInferRequest request, String id) {
+            CompletableFuture<ModelInferResponse> result = new CompletableFuture<>();
+            result.whenComplete((r, e) -> pending.remove(id));
+            pending.put(id, result);
+            try {
+                requests.onNext(request);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        void failPending(Throwable cause) {
+            for (CompletableFuture<ModelInferResponse> future : pending.values()) {
+                future.completeExceptionally(cause);
+            }
+        }
+
+        @Override
+        public void onNext(ModelStreamInferResponse response) {
+            CompletableFuture<ModelInferResponse> future = pending.get(response.getInferResponse().getId());
+            String error = response.getErrorMessage();
+            if (future == null) {
+                // A late response to a cancelled request is dropped; an error nobody claims fails them all
+                if (!error.isEmpty()) {
+                    Throwable cause = Status.INTERNAL.withDescription(error).asRuntimeException();
+                    slot.abandon(this, cause);
+                    failPending(cause);
+                }
+                return;
+            }
+            if (!error.isEmpty()) {
+                future.completeExceptionally(Status.INTERNAL.withDescription(error).asRuntimeException());
+            } else {
+                future.complete(response.getInferResponse());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            slot.reset(this);
+            failPending(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            slot.reset(this);
+            failPending(Status.UNAVAILABLE.withDescription("Stream closed by server").asRuntimeException());
+        }
+    }
+}
@@ -1,49 +1,203 @@
 package com.wtpsplit.triton;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.InferParameter;
+import inference.GrpcService.ModelConfigRequest;
+import inference.GrpcService.ModelConfigResponse;
 import inference.GrpcService.ModelInferRequest;
 import inference.GrpcService.ModelInferResponse;
-import inference.GrpcService.ModelReadyRequest;
-import inference.GrpcService.ServerReadyRequest;
+import io.grpc.Deadline;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
 
-import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * gRPC client for NVIDIA Triton Inference Server.
  * Optimized for wtpsplit sentence segmentation models.
+ * 
+ * Uses one unary ModelInfer call per request over a single channel by
+ * default; see {@link Builder} for channel pools and the streaming and
+ * shared-memory transports.
+ * 
+ * On construction the client reads the model's config and from then on sends
+ * input_ids as INT32 when the model takes INT32, and leaves out all-ones
+ * attention masks when the model marks attention_mask optional.
  */
-public class TritonClient implements Closeable {
+public class TritonClient implements InferenceBackend {
+    
+    private static final float[] FP16_TABLE = buildFp16Table();
     
     private final ManagedChannel channel;
-    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceBlockingStub stub;
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final HealthWatcher health;
+    private final InferTransport transport;
+    private final AdaptiveLimitTransport limiter;
+    private final StatisticsPoller statistics;
     private final String modelName;
+    private final BufferPool buffers = new BufferPool(64);
+    private final Map<Long, ModelInferRequest> prototypes = new ConcurrentHashMap<>();
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub asyncStub;
+    private volatile CompletableFuture<InputSchema> schema;
+    private volatile ByteString onesInt64 = ByteString.EMPTY;
+    private volatile ByteString onesInt32 = ByteString.EMPTY;
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "wtpsplit-timer");
+        t.setDaemon(true);
+        return t;
+    });
     
     public TritonClient(String host, int grpcPort, String modelName) {
-        this.modelName = modelName;
-        this.channel = ManagedChannelBuilder.forAddress(host, grpcPort)
-                .usePlaintext()
-                .maxInboundMessageSize(64 * 1024 * 1024)
-                .build();
-        this.stub = GRPCInferenceServiceGrpc.newBlockingStub(channel);
+        this(builder(host, grpcPort, modelName));
     }
     
-    public boolean isReady() {
+    private TritonClient(Builder builder) {
+        this.modelName = builder.modelName;
+        timer.setRemoveOnCancelPolicy(true);
+        List<EndpointBalancer.Replica> replicas = new ArrayList<>();
+        List<ManagedChannel> controlChannels = new ArrayList<>();
+        for (InetSocketAddress endpoint : builder.endpoints) {
+            List<InferTransport> perChannel = new ArrayList<>();
+            ManagedChannel first = null;
+            for (int i = 0; i < builder.channelCount; i++) {
+                ManagedChannel ch = ManagedChannelBuilder.forAddress(endpoint.getHostString(), endpoint.getPort())
+                        .usePlaintext()
+                        .maxInboundMessageSize(64 * 1024 * 1024)
+                        .build();
+                if (first == null) first = ch;
+                channels.add(ch);
+                perChannel.add(builder.streams > 0
+                        ? new StreamTransport(ch, builder.streams)
+                        : new UnaryTransport(ch));
+            }
+            InferTransport pooled = perChannel.size() == 1
+                    ? perChannel.get(0)
+                    : new ChannelPoolTransport(perChannel, builder.channelSelection);
+            replicas.add(new EndpointBalancer.Replica(first, pooled, modelName));
+            controlChannels.add(first);
+        }
+        
+        // Control RPCs use the primary endpoint's first channel; inference is spread over all of them
+        this.channel = channels.get(0);
+        this.health = new HealthWatcher(channel, modelName, timer, builder.healthIntervalMillis);
+        this.asyncStub = GRPCInferenceServiceGrpc.newStub(channel);
+        this.schema = negotiateSchema();
+        InferTransport base = replicas.size() == 1
+                ? replicas.get(0).transport
+                : new EndpointBalancer(replicas, timer, builder.weighByQueueTime);
         try {
-            boolean serverReady = stub.serverReady(ServerReadyRequest.newBuilder().build()).getReady();
-            boolean modelReady = stub.modelReady(ModelReadyRequest.newBuilder().setName(modelName).build()).getReady();
-            return serverReady && modelReady;
-        } catch (Exception e) {
-            return false;
+            InferTransport local = builder.shmSlots > 0
+                    ? new SharedMemoryTransport(channel, base, modelName, builder.shmSlots, builder.shmMaxTokens)
+                    : base;
+            this.statistics = builder.statsIntervalMillis > 0
+                    ? new StatisticsPoller(local, controlChannels, modelName, timer, builder.statsIntervalMillis)
+                    : null;
+            InferTransport timed = statistics != null ? statistics : local;
+            InferTransport hedged = builder.hedgePercentile > 0
+                    ? new HedgingTransport(timed, timer, builder.hedgePercentile, builder.hedgeMinDelayMicros)
+                    : timed;
+            this.limiter = builder.maxConcurrency > 0
+                    ? new AdaptiveLimitTransport(hedged, builder.maxConcurrency, builder.maxQueued)
+                    : null;
+            this.transport = limiter != null ? limiter : hedged;
+        } catch (RuntimeException e) {
+            timer.shutdownNow();
+            base.close();
+            for (ManagedChannel ch : channels) ch.shutdownNow();
+            throw e;
         }
     }
     
+    /**
+     * Start configuring a client.
+     * 
+     * @param host Triton server host
+     * @param grpcPort Triton gRPC port
+     * @param modelName Model name (e.g., "sat_3l_sm")
+     */
+    public static Builder builder(String host, int grpcPort, String modelName) {
+        return new Builder(host, grpcPort, modelName);
+    }
+    
+    /**
+     * Current adaptive limit on outstanding requests, or -1 when
+     * {@link Builder#adaptiveConcurrency} is off.
+     */
+    public int concurrencyLimit() {
+        return limiter != null ? limiter.limit() : -1;
+    }
+    
+    /**
+     * Requests sent to Triton and not yet answered, or -1 when
+     * {@link Builder#adaptiveConcurrency} is off.
+     */
+    public int inFlight() {
+        return limiter != null ? limiter.inFlight() : -1;
+    }
+    
+    /**
+     * Start connecting every channel now instead of on its first request.
+     * Does not wait for the connections to be established.
+     */
+    @Override
+    public void connect() {
+        for (ManagedChannel ch : channels) ch.getState(true);
+    }
+    
+    /**
+     * Average client and server time per request over the last statistics
+     * interval, or null when {@link Builder#latencyBreakdown} is off or the
+     * first interval has not finished yet.
+     */
+    public LatencyBreakdown latencyBreakdown() {
+        return statistics != null ? statistics.latest() : null;
+    }
+    
+    /**
+     * Whether the server and model were ready at the last background probe.
+     * Does not make an RPC; only a call made before the first probe has
+     * finished waits for it.
+     */
+    @Override
+    public boolean isReady() {
+        return health.isReady();
+    }
+    
+    /**
+     * Be told when readiness changes, including the result of the first
+     * probe. A listener added after the first probe has answered is called
+     * at once, on the adding thread, with the current readiness. Later calls
+     * run on a gRPC callback thread and should not block.
+     * 
+     * @param listener Receives the new readiness
+     */
+    public void addReadinessListener(Consumer<Boolean> listener) {
+        health.addListener(listener);
+    }
+    
+    public void removeReadinessListener(Consumer<Boolean> listener) {
+        health.removeListener(listener);
+    }
+    
     /**
      * Run inference and return logits.
      * 
@@ -52,93 +206,615 @@ public class TritonClient implements Closeable {
      * @return Logits array [seq_len, 1]
      */
     public float[][] infer(int[] inputIds, int[] attentionMask) {
-        int seqLen = inputIds.length;
-        
-        // Convert to bytes
-        byte[] inputBytes = toBytes(inputIds);
-        byte[] maskBytes = toBytes(attentionMask);
-        
-        // Build request
-        ModelInferRequest request = ModelInferRequest.newBuilder()
-            .setModelName(modelName)
-            .addInputs(ModelInferRequest.InferInputTensor.newBuilder()
-                .setName("input_ids")
-                .setDatatype("INT64")
-                .addShape(1)
-                .addShape(seqLen))
-            .addInputs(ModelInferRequest.InferInputTensor.newBuilder()
-                .setName("attention_mask")
-                .setDatatype("INT64")
-                .addShape(1)
-                .addShape(seqLen))
-            .addOutputs(ModelInferRequest.InferRequestedOutputTensor.newBuilder()
-                .setName("logits"))
-            .addRawInputContents(ByteString.copyFrom(inputBytes))
-            .addRawInputContents(ByteString.copyFrom(maskBytes))
-            .build();
-        
-        // Execute
-        ModelInferResponse response = stub.modelInfer(request);
-        
-        // Parse response
+        return await(inferAsync(inputIds, attentionMask));
+    }
+    
+    /**
+     * Run inference without blocking the calling thread.
+     * 
+     * @param inputIds XLM-RoBERTa token IDs
+     * @param attentionMask Attention mask (1 for valid tokens)
+     * @return Future of the logits array [seq_len, 1]
+     */
+    public CompletableFuture<float[][]> inferAsync(int[] inputIds, int[] attentionMask) {
+        return send(new int[][] { inputIds }, new int[][] { attentionMask }, null, Priority.NORMAL,
+            response -> parseLogits(response, 1, false).toArray()[0]);
+    }
+    
+    /**
+     * Run batched inference over several windows in a single request.
+     * 
+     * All rows must have the same length; callers pad shorter windows and
+     * zero their attention mask.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @return Logits array [batch, seq_len, num_labels]
+     */
+    public float[][][] inferBatch(int[][] inputIds, int[][] attentionMask) {
+        return await(inferBatchAsync(inputIds, attentionMask));
+    }
+    
+    /**
+     * Run batched inference without blocking the calling thread.
+     * The response is decoded on the gRPC callback thread; cancelling the
+     * returned future cancels the RPC.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @return Future of the logits array [batch, seq_len, num_labels]
+     */
+    public CompletableFuture<float[][][]> inferBatchAsync(int[][] inputIds, int[][] attentionMask) {
+        int batch = inputIds.length;
+        return send(inputIds, attentionMask, null, Priority.NORMAL,
+            response -> parseLogits(response, batch, false).toArray());
+    }
+    
+    /**
+     * Run batched inference and return a flat view of the logits, decoded
+     * straight from the response bytes.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @param firstLabelOnly Decode only label 0 of each position
+     * @return Logits [batch, seq_len, num_labels], or [batch, seq_len, 1] with firstLabelOnly
+     */
+    public Logits inferLogits(int[][] inputIds, int[][] attentionMask, boolean firstLabelOnly) {
+        return await(inferLogitsAsync(inputIds, attentionMask, firstLabelOnly));
+    }
+    
+    /**
+     * Run batched inference without blocking, returning a flat view of the logits.
+     * Cancelling the returned future cancels the RPC.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @param firstLabelOnly Decode only label 0 of each position
+     * @return Future of logits [batch, seq_len, num_labels], or [batch, seq_len, 1] with firstLabelOnly
+     */
+    public CompletableFuture<Logits> inferLogitsAsync(int[][] inputIds, int[][] attentionMask,
+                                                      boolean firstLabelOnly) {
+        return inferLogitsAsync(inputIds, attentionMask, firstLabelOnly, null);
+    }
+    
+    /**
+     * Run batched inference without blocking, giving up at a deadline. Unary
+     * calls carry the deadline as their gRPC deadline; with any transport the
+     * future fails with DEADLINE_EXCEEDED once it passes and the request is
+     * cancelled. Several calls may share one deadline to bound their total time.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @param firstLabelOnly Decode only label 0 of each position
+     * @param deadline When to give up, or null to wait indefinitely
+     * @return Future of logits [batch, seq_len, num_labels], or [batch, seq_len, 1] with firstLabelOnly
+     */
+    public CompletableFuture<Logits> inferLogitsAsync(int[][] inputIds, int[][] attentionMask,
+                                                      boolean firstLabelOnly, Deadline deadline) {
+        return inferLogitsAsync(inputIds, attentionMask, firstLabelOnly, deadline, Priority.NORMAL);
+    }
+    
+    /**
+     * Run batched inference without blocking, at a given priority. With
+     * {@link Builder#adaptiveConcurrency} the request waits in its priority's
+     * lane when the limit is reached; when the model config enables priority
+     * levels the request also carries a matching Triton priority.
+     * 
+     * @param inputIds Token IDs [batch, seq_len]
+     * @param attentionMask Attention mask [batch, seq_len]
+     * @param firstLabelOnly Decode only label 0 of each position
+     * @param deadline When to give up, or null to wait indefinitely
+     * @param priority Scheduling class of the request
+     * @return Future of logits [batch, seq_len, num_labels], or [batch, seq_len, 1] with firstLabelOnly
+     */
+    @Override
+    public CompletableFuture<Logits> inferLogitsAsync(int[][] inputIds, int[][] attentionMask,
+                                                      boolean firstLabelOnly, Deadline deadline,
+                                                      Priority priority) {
+        int batch = inputIds.length;
+        return send(inputIds, attentionMask, deadline, priority,
+            response -> parseLogits(response, batch, firstLabelOnly));
+    }
+    
+    private <T> CompletableFuture<T> send(int[][] inputIds, int[][] attentionMask, Deadline deadline,
+                                          Priority priority, Function<ModelInferResponse, T> decoder) {
+        int batch = inputIds.length;
+        int seqLen = batch > 0 ? inputIds[0].length : 0;
+        for (int b = 0; b < batch; b++) {
+            if (inputIds[b].length != seqLen || attentionMask[b].length != seqLen) {
+                throw new IllegalArgumentException("Batch rows must all have length " + seqLen);
+            }
+        }
+        if (deadline != null && deadline.isExpired()) {
+            return CompletableFuture.failedFuture(deadlineExceeded());
+        }
+        
+        CompletableFuture<InputSchema> pending = schema();
+        if (pending.isDone() && !pending.isCompletedExceptionally()) {
+            return expireAt(encodeAndSend(pending.join(), inputIds, attentionMask, deadline, priority, decoder), deadline);
+        }
+        
+        // First calls wait for negotiation; if it fails they go out with the default schema
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.exceptionally(e -> InputSchema.DEFAULT).thenAccept(schema -> {
+            if (result.isDone()) return;
+            try {
+                follow(result, encodeAndSend(schema, inputIds, attentionMask, deadline, priority, decoder));
+            } catch (RuntimeException e) {
+                // Encoding or a closed transport; nothing else would complete the caller's future
+                result.completeExceptionally(e);
+            }
+        });
+        return expireAt(result, deadline);
+    }
+    
+    /**
+     * Complete {@code result} with the outcome of {@code call}, and cancel
+     * {@code call} if {@code result} is cancelled.
+     */
+    private static <T> void follow(CompletableFuture<T> result, CompletableFuture<T> call) {
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) call.cancel(false);
+        });
+        call.whenComplete((r, e) -> {
+            if (e != null) result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            else result.complete(r);
+        });
+    }
+    
+    /**
+     * Fail with DEADLINE_EXCEEDED and cancel the call if it is still running
+     * when the deadline passes.
+     */
+    <T> CompletableFuture<T> expireAt(CompletableFuture<T> call, Deadline deadline) {
+        if (deadline == null) return call;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> expiry = deadline.runOnExpiration(() -> {
+            if (result.completeExceptionally(deadlineExceeded())) call.cancel(false);
+        }, timer);
+        result.whenComplete((r, e) -> expiry.cancel(false));
+        follow(result, call);
+        return result;
+    }
+    
+    private static StatusRuntimeException deadlineExceeded() {
+        return Status.DEADLINE_EXCEEDED.withDescription("Deadline passed before Triton responded")
+            .asRuntimeException();
+    }
+    
+    private <T> CompletableFuture<T> encodeAndSend(InputSchema schema, int[][] inputIds, int[][] attentionMask,
+                                          Deadline deadline, Priority priority,
+                                          Function<ModelInferResponse, T> decoder) {
+        int batch = inputIds.length;
+        int seqLen = batch > 0 ? inputIds[0].length : 0;
+        int count = batch * seqLen;
+        boolean allOnes = isAllOnes(attentionMask);
+        boolean withMask = schema.sendMask(allOnes);
+        
+        // Encode into pooled direct buffers; an all-ones mask shares one constant buffer
+        ByteBuffer idsBuf = writeInts(inputIds, count, schema.int32Ids);
+        ByteBuffer maskBuf = withMask && !allOnes ? writeInts(attentionMask, count, schema.int32Mask) : null;
+        ModelInferRequest.Builder builder = prototype(schema, withMask, batch, seqLen).toBuilder()
+            .addRawInputContents(UnsafeByteOperations.unsafeWrap(idsBuf));
+        if (withMask) {
+            builder.addRawInputContents(maskBuf != null
+                ? UnsafeByteOperations.unsafeWrap(maskBuf)
+                : ones(count, schema.int32Mask));
+        }
+        
+        long level = schema.tritonPriority(priority);
+        if (level > 0) {
+            builder.putParameters("priority", InferParameter.newBuilder().setUint64Param(level).build());
+        }
+        
+        // The limiter is the outermost transport and the only one that queues by priority
+        CompletableFuture<T> result = limiter != null
+            ? limiter.infer(builder.build(), deadline, priority, decoder)
+            : transport.infer(builder.build(), deadline, decoder);
+        result.whenComplete((r, e) -> {
+            // A cancelled call may still be serializing the request, so its buffers are left to the GC
+            if (result.isCancelled()) return;
+            buffers.release(idsBuf);
+            if (maskBuf != null) buffers.release(maskBuf);
+        });
+        return result;
+    }
+    
+    /**
+     * The negotiated input schema, re-requested if the last attempt failed.
+     */
+    private CompletableFuture<InputSchema> schema() {
+        CompletableFuture<InputSchema> current = schema;
+        if (current.isCompletedExceptionally()) {
+            synchronized (this) {
+                if (schema == current) schema = negotiateSchema();
+                current = schema;
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Ask Triton which input datatypes the model takes and whether attention_mask
+     * is optional, so ids can go out as INT32 and all-ones masks can be left out.
+     */
+    private CompletableFuture<InputSchema> negotiateSchema() {
+        CompletableFuture<InputSchema> result = new CompletableFuture<>();
+        asyncStub.modelConfig(ModelConfigRequest.newBuilder().setName(modelName).build(),
+            new StreamObserver<ModelConfigResponse>() {
+                @Override
+                public void onNext(ModelConfigResponse response) {
+                    result.complete(InputSchema.fromConfig(response.getConfig()));
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                    // A server without the ModelConfig RPC will never answer; keep the defaults
+                    if (Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED) {
+                        result.complete(InputSchema.DEFAULT);
+                    } else {
+                        result.completeExceptionally(t);
+                    }
+                }
+                
+                @Override
+                public void onCompleted() {
+                }
+            });
+        return result;
+    }
+    
+    /**
+     * Request metadata (model, tensor names, datatypes, shapes) without contents,
+     * built once per schema and [batch, seq_len] shape.
+     */
+    private ModelInferRequest prototype(InputSchema schema, boolean withMask, int batch, int seqLen) {
+        long key = ((long) batch << 32) | ((long) seqLen << 3) | schema.variant(withMask);
+        return prototypes.computeIfAbsent(key, k -> {
+            ModelInferRequest.Builder builder = ModelInferRequest.newBuilder()
+                .setModelName(modelName)
+                .addInputs(ModelInferRequest.InferInputTensor.newBuilder()
+                    .setName("input_ids")
+                    .setDatatype(schema.int32Ids ? "INT32" : "INT64")
+                    .addShape(batch)
+                    .addShape(seqLen));
+            if (withMask) {
+                builder.addInputs(ModelInferRequest.InferInputTensor.newBuilder()
+                    .setName("attention_mask")
+                    .setDatatype(schema.int32Mask ? "INT32" : "INT64")
+                    .addShape(batch)
+                    .addShape(seqLen));
+            }
+            return builder
+                .addOutputs(ModelInferRequest.InferRequestedOutputTensor.newBuilder()
+                    .setName("logits"))
+                .build();
+        });
+    }
+    
+    private ByteBuffer writeInts(int[][] rows, int count, boolean int32) {
+        // Little-endian, 4 or 8 bytes per value to match the model's INT32/INT64 input
+        ByteBuffer buf = buffers.acquire(count * (int32 ? 4 : 8));
+        for (int[] row : rows) {
+            if (int32) {
+                for (int v : row) buf.putInt(v);
+            } else {
+                for (int v : row) buf.putLong(v);
+            }
+        }
+        return buf.flip();
+    }
+    
+    private static boolean isAllOnes(int[][] rows) {
+        for (int[] row : rows) {
+            for (int v : row) {
+                if (v != 1) return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * A read-only all-ones INT32 or INT64 tensor of {@code count} elements,
+     * sliced from a shared buffer that only grows.
+     */
+    private ByteString ones(int count, boolean int32) {
+        int width = int32 ? 4 : 8;
+        ByteString ones = int32 ? onesInt32 : onesInt64;
+        if (ones.size() < count * width) {
+            ByteBuffer buf = ByteBuffer.allocate(Integer.highestOneBit(count) * 2 * width).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining()) {
+                if (int32) buf.putInt(1);
+                else buf.putLong(1L);
+            }
+            ones = ByteString.copyFrom(buf.flip());
+            if (int32) onesInt32 = ones;
+            else onesInt64 = ones;
+        }
+        return ones.substring(0, count * width);
+    }
+    
+    private Logits parseLogits(ModelInferResponse response, int batch, boolean firstLabelOnly) {
+        // Parse response [batch, seq_len, num_labels] without copying the raw bytes
         var output = response.getOutputs(0);
-        int dim1 = (int) output.getShape(1);
-        int dim2 = output.getShapeCount() > 2 ? (int) output.getShape(2) : 1;
-        
-        byte[] data = response.getRawOutputContents(0).toByteArray();
-        float[] flat = "FP16".equals(output.getDatatype()) 
-            ? fromFp16(data, dim1 * dim2) 
-            : fromFp32(data, dim1 * dim2);
-        
-        // Reshape to [seq_len, 1]
-        float[][] logits = new float[dim1][dim2];
-        for (int i = 0; i < dim1; i++) {
-            for (int j = 0; j < dim2; j++) {
-                logits[i][j] = flat[i * dim2 + j];
+        int seqLen = (int) output.getShape(1);
+        int labels = output.getShapeCount() > 2 ? (int) output.getShape(2) : 1;
+        int width = firstLabelOnly ? 1 : labels;
+        
+        ByteBuffer data = response.getRawOutputContents(0).asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        float[] flat = new float[batch * seqLen * width];
+        if ("FP16".equals(output.getDatatype())) {
+            fromFp16(data, labels, flat, width);
+        } else {
+            fromFp32(data, labels, flat, width);
+        }
+        return new Logits(flat, batch, seqLen, width);
+    }
+    
+    /**
+     * Wait for a future, rethrowing the original failure instead of a CompletionException.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+    
+    /**
+     * Decode the first {@code width} of every {@code labels} FP32 values into {@code out}.
+     */
+    private void fromFp32(ByteBuffer buf, int labels, float[] out, int width) {
+        if (width == labels) {
+            buf.asFloatBuffer().get(out);
+            return;
+        }
+        int rows = out.length / width;
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < width; j++) {
+                out[r * width + j] = buf.getFloat((r * labels + j) * 4);
             }
         }
-        return logits;
     }
     
-    private byte[] toBytes(int[] arr) {
-        // Previously this serialized 4-byte ints (INT32) which caused a mismatch when the model
-        // expects INT64. Serialize as 8-byte little-endian longs to match "INT64" datatype.
-        ByteBuffer buf = ByteBuffer.allocate(arr.length * 8).order(ByteOrder.LITTLE_ENDIAN);
-        for (int v : arr) buf.putLong((long) v);
-        return buf.array();
+    /**
+     * Decode the first {@code width} of every {@code labels} FP16 values into {@code out}.
+     */
+    private void fromFp16(ByteBuffer buf, int labels, float[] out, int width) {
+        if (width == labels) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] = FP16_TABLE[buf.getShort(i * 2) & 0xFFFF];
+            }
+            return;
+        }
+        int rows = out.length / width;
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < width; j++) {
+                out[r * width + j] = FP16_TABLE[buf.getShort((r * labels + j) * 2) & 0xFFFF];
+            }
+        }
     }
     
-    private float[] fromFp32(byte[] bytes, int count) {
-        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-        float[] out = new float[count];
-        for (int i = 0; i < count; i++) out[i] = buf.getFloat();
-        return out;
+    /**
+     * Every half-float bit pattern decoded once (256 KB), so decoding is a single load.
+     */
+    private static float[] buildFp16Table() {
+        float[] table = new float[1 << 16];
+        for (int h = 0; h < table.length; h++) table[h] = halfToFloat(h);
+        return table;
     }
     
-    private float[] fromFp16(byte[] bytes, int count) {
-        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-        float[] out = new float[count];
-        for (int i = 0; i < count; i++) {
-            int h = buf.getShort() & 0xFFFF;
-            int sign = (h >> 15) & 1;
-            int exp = (h >> 10) & 0x1F;
-            int mant = h & 0x3FF;
-            float val;
-            if (exp == 0) val = mant == 0 ? 0f : (float)(mant / 1024.0 * Math.pow(2, -14));
-            else if (exp == 31) val = mant == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
-            else val = (float)((1.0 + mant / 1024.0) * Math.pow(2, exp - 15));
-            out[i] = sign == 1 ? -val : val;
+    /**
+     * Exact IEEE 754 binary16 to binary32 conversion by re-biasing the exponent.
+     * Matches the previous Math.pow-based decoder bit for bit, including
+     * signed zeros and its sign-carrying canonical NaN.
+     */
+    static float halfToFloat(int h) {
+        int sign = (h & 0x8000) << 16;
+        int exp = (h >> 10) & 0x1F;
+        int mant = h & 0x3FF;
+        if (exp == 31) {
+            return Float.intBitsToFloat(sign | (mant != 0 ? 0x7FC00000 : 0x7F800000));
+        }
+        if (exp == 0) {
+            // Zero or subnormal: mant * 2^-24 is exact in float
+            float val = mant * 0x1p-24f;
+            return sign != 0 ? -val : val;
         }
-        return out;
+        return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
     }
     
     @Override
     public void close() throws IOException {
+        health.close();
+        transport.close();
+        timer.shutdownNow();
+        for (ManagedChannel ch : channels) ch.shutdown();
         try {
-            channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+            for (ManagedChannel ch : channels) ch.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
+    
+    /**
+     * Configuration for a {@link TritonClient}.
+     * 
+     * Example:
+     * <pre>
+     * TritonClient client = TritonClient.builder("localhost", 8085, "sat_3l_sm")
+     *     .streaming(2)
+     *     .build();
+     * </pre>
+     */
+    public static class Builder {
+        private final List<InetSocketAddress> endpoints = new ArrayList<>();
+        private final String modelName;
+        private int streams;
+        private int channelCount = 1;
+        private ChannelSelection channelSelection = ChannelSelection.LEAST_IN_FLIGHT;
+        private int shmSlots;
+        private int shmMaxTokens;
+        private boolean weighByQueueTime;
+        private double hedgePercentile;
+        private long hedgeMinDelayMicros;
+        private int maxConcurrency;
+        private int maxQueued;
+        private long healthIntervalMillis = 5000;
+        private long statsIntervalMillis;
+        
+        private Builder(String host, int grpcPort, String modelName) {
+            this.endpoints.add(InetSocketAddress.createUnresolved(host, grpcPort));
+            this.modelName = modelName;
+        }
+        
+        /**
+         * Send requests over long-lived bidirectional ModelStreamInfer streams
+         * instead of one unary call each. Avoids per-call HTTP/2 stream setup,
+         * which dominates for short texts.
+         * 
+         * @param streams Number of streams to spread requests across
+         */
+        public Builder streaming(int streams) {
+            if (streams < 1) throw new IllegalArgumentException("streams must be at least 1");
+            this.streams = streams;
+            return this;
+        }
+        
+        /**
+         * Open several channels, each with its own HTTP/2 connection, and
+         * spread requests across them. A single connection caps throughput
+         * at high request rates.
+         * 
+         * @param count Number of channels
+         * @param selection How each request picks a channel
+         */
+        public Builder channels(int count, ChannelSelection selection) {
+            if (count < 1) throw new IllegalArgumentException("count must be at least 1");
+            this.channelCount = count;
+            this.channelSelection = selection;
+            return this;
+        }
+        
+        /**
+         * Open several channels and send each request to the least busy one.
+         */
+        public Builder channels(int count) {
+            return channels(count, ChannelSelection.LEAST_IN_FLIGHT);
+        }
+        
+        /**
+         * Pass tensors through system shared memory instead of the socket.
+         * Only for a Triton running on the same host; slots are created under
+         * /dev/shm and registered when the client is built.
+         * 
+         * @param slots Number of requests that can use shared memory at once;
+         *        extra concurrent requests fall back to inline tensors
+         * @param maxTokens Largest batch * seq_len a slot can hold
+         */
+        public Builder sharedMemory(int slots, int maxTokens) {
+            if (slots < 1 || maxTokens < 1) {
+                throw new IllegalArgumentException("slots and maxTokens must be at least 1");
+            }
+            this.shmSlots = slots;
+            this.shmMaxTokens = maxTokens;
+            return this;
+        }
+        
+        /**
+         * Add another Triton server serving the same model. Requests then go
+         * to whichever server has the fewest outstanding requests from this
+         * client; servers failing readiness probes or returning UNAVAILABLE
+         * are skipped until they recover. Control RPCs (readiness, config)
+         * stay on the server passed to {@link TritonClient#builder}.
+         * 
+         * @param host Triton server host
+         * @param grpcPort Triton gRPC port
+         */
+        public Builder replica(String host, int grpcPort) {
+            endpoints.add(InetSocketAddress.createUnresolved(host, grpcPort));
+            return this;
+        }
+        
+        /**
+         * When routing across replicas, also count each server's recent
+         * average queue time, sampled from ModelStatistics every second, so
+         * requests avoid servers that are backed up by other clients.
+         */
+        public Builder weighByQueueTime() {
+            this.weighByQueueTime = true;
+            return this;
+        }
+        
+        /**
+         * Send a backup copy of any request still unanswered after the given
+         * percentile of recent response times, and use whichever answer
+         * arrives first. Trims tail latency caused by server-side stragglers
+         * at the cost of roughly (1 - percentile) extra requests. Works best
+         * with {@link #channels} or {@link #replica}, which send the backup
+         * to a different connection or server.
+         * 
+         * @param percentile Latency percentile to wait for, between 0 and 1 (e.g. 0.95)
+         * @param minDelayMicros Never send a backup sooner than this
+         */
+        public Builder hedging(double percentile, long minDelayMicros) {
+            if (!(percentile > 0 && percentile < 1)) {
+                throw new IllegalArgumentException("percentile must be between 0 and 1");
+            }
+            this.hedgePercentile = percentile;
+            this.hedgeMinDelayMicros = Math.max(0, minDelayMicros);
+            return this;
+        }
+        
+        /**
+         * Limit outstanding requests to a level learned from Triton's
+         * responses: the limit grows while latency stays near its best and
+         * shrinks when latency doubles or Triton answers RESOURCE_EXHAUSTED
+         * or UNAVAILABLE. Requests over the limit queue until a slot frees
+         * up. The current limit is reported by {@link TritonClient#concurrencyLimit()}.
+         * 
+         * @param maxLimit Upper bound on the learned limit; it starts at a quarter of this
+         * @param maxQueued Requests allowed to wait for a slot; more fail with RESOURCE_EXHAUSTED
+         */
+        public Builder adaptiveConcurrency(int maxLimit, int maxQueued) {
+            if (maxLimit < 1 || maxQueued < 0) {
+                throw new IllegalArgumentException("maxLimit must be at least 1 and maxQueued not negative");
+            }
+            this.maxConcurrency = maxLimit;
+            this.maxQueued = maxQueued;
+            return this;
+        }
+        
+        /**
+         * How often the background readiness probe runs (default 5 seconds).
+         * {@link TritonClient#isReady()} reports the latest result.
+         */
+        public Builder healthCheckInterval(long millis) {
+            if (millis < 1) throw new IllegalArgumentException("millis must be at least 1");
+            this.healthIntervalMillis = millis;
+            return this;
+        }
+        
+        /**
+         * Poll ModelStatistics from every replica and time each request on
+         * the client, so {@link TritonClient#latencyBreakdown()} can split
+         * latency into network and serialization, Triton queue, and compute.
+         * 
+         * @param intervalMillis How often to poll; each breakdown covers one interval
+         */
+        public Builder latencyBreakdown(long intervalMillis) {
+            if (intervalMillis < 1) throw new IllegalArgumentException("intervalMillis must be at least 1");
+            this.statsIntervalMillis = intervalMillis;
+            return this;
+        }
+        
+        public TritonClient build() {
+            if (shmSlots > 0 && endpoints.size() > 1) {
+                throw new IllegalStateException("Shared memory cannot be combined with replicas");
+            }
+            return new TritonClient(this);
+        }
+    }
 }
-
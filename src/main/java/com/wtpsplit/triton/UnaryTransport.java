@@ -0,0 +1,64 @@
+package com.wtpsplit.triton;
+
+import inference.GRPCInferenceServiceGrpc;
+import inference.GrpcService.ModelInferRequest;
+import inference.GrpcService.ModelInferResponse;
+import io.grpc.Deadline;
+import io.grpc.Channel;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * One unary ModelInfer RPC per request.
+ */
+class UnaryTransport implements InferTransport {
+    
+    private final GRPCInferenceServiceGrpc.GRPCInferenceServiceStub asyncStub;
+    
+    UnaryTransport(Channel channel) {
+        this.asyncStub = GRPCInferenceServiceGrpc.newStub(channel);
+    }
+    
+    @Override
+    public <T> CompletableFuture<T> infer(ModelInferRequest request, Deadline deadline,
+                                          Function<ModelInferResponse, T> decoder) {
+        return InferTransport.decode(call(request, deadline), decoder);
+    }
+    
+    private CompletableFuture<ModelInferResponse> call(ModelInferRequest request, Deadline deadline) {
+        CompletableFuture<ModelInferResponse> result = new CompletableFuture<>();
+        GRPCInferenceServiceGrpc.GRPCInferenceServiceStub stub = deadline != null
+            ? asyncStub.withDeadline(deadline)
+            : asyncStub;
+        stub.modelInfer(request, new ClientResponseObserver<ModelInferRequest, ModelInferResponse>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<ModelInferRequest> call) {
+                result.whenComplete((r, e) -> {
+                    if (result.isCancelled()) call.cancel("Cancelled by caller", null);
+                });
+            }
+            
+            @Override
+            public void onNext(ModelInferResponse response) {
+                result.complete(response);
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+            
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return result;
+    }
+    
+    @Override
+    public void close() {
+    }
+}
@@ -2,17 +2,32 @@ package com.wtpsplit.triton;
 
 import ai.djl.huggingface.tokenizers.Encoding;
 import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.huggingface.tokenizers.jni.CharSpan;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * WtpSplit Sentence Segmentation using Triton + DJL.
  * 
  * Uses XLM-RoBERTa tokenizer from Deep Java Library (DJL)
- * and gRPC inference via NVIDIA Triton.
+ * and gRPC inference via NVIDIA Triton, or any other {@link InferenceBackend}.
  * 
  * Example:
  * <pre>
@@ -24,16 +39,38 @@ import java.util.List;
  */
 public class WtpSplit implements Closeable {
     
-    private final TritonClient client;
+    private final InferenceBackend backend;
+    private final MicroBatcher batcher;
+    private final boolean ownsBackend;
+    private final String tokenizerSource;
     private final HuggingFaceTokenizer tokenizer;
+    private final AtomicBoolean closed = new AtomicBoolean();
     private final float threshold;
     private final int blockSize;
     private final int stride;
+    private final int maxBatchSize;
+    // Sorted window lengths to pad to, empty to send windows at their own length
+    private final int[] buckets;
+    private volatile boolean warm;
+    
+    static final String TOKENIZER = "xlm-roberta-base";
+    // Texts per native batch tokenization call in splitAll
+    private static final int ENCODE_BATCH = 256;
+    // Tokenized batches whose windows may be awaiting inference at once in splitAll
+    private static final int BATCHES_IN_FLIGHT = 2;
     
     // XLM-RoBERTa special tokens
     private static final int CLS_TOKEN = 0;
+    private static final int PAD_TOKEN = 1;
     private static final int SEP_TOKEN = 2;
     
+    // Warmup stops once a round costs the JIT less than this
+    private static final long WARM_COMPILE_MILLIS = 10;
+    private static final int WARMUP_LOCAL_PASSES = 200;
+    private static final String WARMUP_TEXT = "Hello world. This is a test. How are you doing today? "
+        + "Der schnelle braune Fuchs springt über den faulen Hund. Voilà, c'est fini! "
+        + "これはテストです。 Mr. Smith arrived at 3 p.m. and left soon after";
+    
     /**
      * Create WtpSplit with default settings.
      */
@@ -41,6 +78,14 @@ public class WtpSplit implements Closeable {
         this(host, grpcPort, modelName, 0.25f, 512, 64);
     }
     
+    /**
+     * Create WtpSplit with custom settings and the default batch size.
+     */
+    public WtpSplit(String host, int grpcPort, String modelName, 
+                    float threshold, int blockSize, int stride) throws IOException {
+        this(host, grpcPort, modelName, threshold, blockSize, stride, 32);
+    }
+    
     /**
      * Create WtpSplit with custom settings.
      * 
@@ -50,18 +95,102 @@ public class WtpSplit implements Closeable {
      * @param threshold Split probability threshold (default: 0.25)
      * @param blockSize Maximum sequence length (default: 512)
      * @param stride Sliding window stride (default: 64)
+     * @param maxBatchSize Maximum windows sent per inference request (default: 32)
      */
     public WtpSplit(String host, int grpcPort, String modelName, 
-                    float threshold, int blockSize, int stride) throws IOException {
-        this.client = new TritonClient(host, grpcPort, modelName);
-        this.tokenizer = HuggingFaceTokenizer.newInstance("xlm-roberta-base");
+                    float threshold, int blockSize, int stride, int maxBatchSize) throws IOException {
+        this(new TritonClient(host, grpcPort, modelName), null, true, SharedTokenizers.defaultSource(TOKENIZER),
+             threshold, blockSize, stride, maxBatchSize, new int[0]);
+    }
+    
+    /**
+     * Create WtpSplit over a shared client, optionally routing windows through
+     * a {@link MicroBatcher} so they are batched with other callers' windows.
+     * The client and batcher are not closed by {@link #close()}.
+     * 
+     * @param client Shared Triton client
+     * @param batcher Shared batcher, or null to send each document's windows directly
+     */
+    public WtpSplit(TritonClient client, MicroBatcher batcher, 
+                    float threshold, int blockSize, int stride, int maxBatchSize) throws IOException {
+        this(client, batcher, false, SharedTokenizers.defaultSource(TOKENIZER),
+             threshold, blockSize, stride, maxBatchSize, new int[0]);
+    }
+    
+    /**
+     * Create WtpSplit over a shared client, padding every window up to the
+     * nearest of a fixed set of lengths. Triton then sees a handful of input
+     * shapes instead of a new one for almost every document, which lets it
+     * batch requests together and reuse TensorRT kernels. Padded positions
+     * are masked out and ignored when reading probabilities.
+     * 
+     * @param client Shared Triton client
+     * @param batcher Shared batcher, or null to send each document's windows directly
+     * @param buckets Window lengths to pad to (e.g. 32, 64, 128, 256, 512); windows
+     *        longer than every bucket keep their own length
+     */
+    public WtpSplit(TritonClient client, MicroBatcher batcher, float threshold, int blockSize, int stride,
+                    int maxBatchSize, int... buckets) throws IOException {
+        this(client, batcher, false, SharedTokenizers.defaultSource(TOKENIZER),
+             threshold, blockSize, stride, maxBatchSize, buckets);
+    }
+    
+    /**
+     * Create WtpSplit over any inference backend, not only a Triton server.
+     * The backend is not closed by {@link #close()}.
+     * 
+     * @param backend Where windows are scored
+     * @param buckets Window lengths to pad to, or none to send windows at their own length
+     */
+    public WtpSplit(InferenceBackend backend, float threshold, int blockSize, int stride, int maxBatchSize,
+                    int... buckets) throws IOException {
+        this(backend, null, false, SharedTokenizers.defaultSource(TOKENIZER),
+             threshold, blockSize, stride, maxBatchSize, buckets);
+    }
+    
+    /**
+     * Create WtpSplit over any inference backend with a tokenizer read from
+     * disk, so nothing is fetched from the Hugging Face hub. The backend is
+     * not closed by {@link #close()}. A named factory rather than a
+     * constructor, because a {@code Path} overload would make
+     * {@code new WtpSplit(client, null, ...)} ambiguous.
+     * 
+     * @param backend Where windows are scored
+     * @param tokenizer XLM-RoBERTa tokenizer.json, or the directory holding it
+     * @param buckets Window lengths to pad to, or none to send windows at their own length
+     */
+    public static WtpSplit withTokenizer(InferenceBackend backend, Path tokenizer, float threshold, int blockSize,
+                                         int stride, int maxBatchSize, int... buckets) throws IOException {
+        return new WtpSplit(backend, null, false, SharedTokenizers.fileSource(tokenizer),
+                            threshold, blockSize, stride, maxBatchSize, buckets);
+    }
+    
+    private WtpSplit(InferenceBackend backend, MicroBatcher batcher, boolean ownsBackend, String tokenizerSource,
+                     float threshold, int blockSize, int stride, int maxBatchSize, int[] buckets) throws IOException {
+        for (int bucket : buckets) {
+            if (bucket < 3) throw new IllegalArgumentException("Bucket lengths must be at least 3");
+        }
+        this.buckets = buckets.clone();
+        Arrays.sort(this.buckets);
+        this.backend = backend;
+        this.batcher = batcher;
+        this.ownsBackend = ownsBackend;
         this.threshold = threshold;
         this.blockSize = blockSize;
         this.stride = stride;
+        this.maxBatchSize = maxBatchSize;
         
-        if (!client.isReady()) {
+        if (!backend.isReady()) {
+            if (ownsBackend) backend.close();
             throw new IOException("Triton server or model not ready");
         }
+        try {
+            this.tokenizer = SharedTokenizers.acquire(tokenizerSource);
+        } catch (IOException | RuntimeException e) {
+            if (ownsBackend) backend.close();
+            throw e;
+        }
+        this.tokenizerSource = tokenizerSource;
     }
     
     /**
@@ -79,6 +208,209 @@ public class WtpSplit implements Closeable {
         return extractSentences(text, charProbs);
     }
     
+    /**
+     * Split text into sentences without blocking on inference.
+     * Tokenization runs on the calling thread; sentence extraction runs on the
+     * gRPC callback thread once the last window's logits arrive.
+     * 
+     * @param text Input text
+     * @return Future of the list of sentences
+     */
+    public CompletableFuture<List<String>> splitAsync(String text) {
+        return splitAsync(text, Priority.NORMAL);
+    }
+    
+    /**
+     * Split text into sentences at a given priority. When inference is
+     * queued (by a {@link MicroBatcher} or the client's adaptive concurrency
+     * limit), higher priorities go first; lower ones still progress.
+     * 
+     * @param text Input text
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return List of sentences
+     */
+    public List<String> split(String text, Priority priority) {
+        return TritonClient.await(splitAsync(text, priority));
+    }
+    
+    /**
+     * Split text into sentences at a given priority, without blocking on inference.
+     * 
+     * @param text Input text
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return Future of the list of sentences
+     */
+    public CompletableFuture<List<String>> splitAsync(String text, Priority priority) {
+        if (text == null || text.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        
+        return predict(text, null, priority)
+            .thenApply(p -> extractSentences(text, p.charProbs));
+    }
+    
+    /**
+     * Split many texts into sentences.
+     * 
+     * @param texts Input texts
+     * @return Sentences of each text, in order
+     */
+    public List<List<String>> splitAll(List<String> texts) {
+        return splitAll(texts, Priority.NORMAL);
+    }
+    
+    /**
+     * Split many texts into sentences at a given priority.
+     * 
+     * @param texts Input texts
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return Sentences of each text, in order
+     */
+    public List<List<String>> splitAll(List<String> texts, Priority priority) {
+        return TritonClient.await(splitAllAsync(texts, priority));
+    }
+    
+    /**
+     * Split many texts into sentences without blocking on inference. Later
+     * batches are tokenized on the common fork-join pool.
+     * 
+     * @param texts Input texts
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return Future of the sentences of each text, in order
+     * @see #splitAllAsync(List, Priority, Executor)
+     */
+    public CompletableFuture<List<List<String>>> splitAllAsync(List<String> texts, Priority priority) {
+        return splitAllAsync(texts, priority, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Split many texts into sentences without blocking on inference. Texts
+     * are tokenized {@value #ENCODE_BATCH} at a time in one native call,
+     * which spreads them over the tokenizer's own thread pool. At most
+     * {@value #BATCHES_IN_FLIGHT} batches are awaiting inference at a time,
+     * so a long list never queues all its windows at once. The first
+     * {@value #BATCHES_IN_FLIGHT} batches are tokenized on the calling
+     * thread; each later one is tokenized on {@code encodeExecutor} once the
+     * batch {@value #BATCHES_IN_FLIGHT} before it has finished, never on the
+     * gRPC or timer thread that finished it.
+     * 
+     * The native pool cannot be sized from here: the tokenizer library
+     * builds it once per process from the RAYON_NUM_THREADS and
+     * TOKENIZERS_PARALLELISM environment variables, which Java cannot set
+     * after launch, and DJL exposes no thread setting of its own.
+     * 
+     * @param texts Input texts
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @param encodeExecutor Runs the tokenization of every batch after the first few
+     * @return Future of the sentences of each text, in order
+     */
+    public CompletableFuture<List<List<String>>> splitAllAsync(List<String> texts, Priority priority,
+                                                               Executor encodeExecutor) {
+        List<CompletableFuture<List<List<String>>>> batches = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += ENCODE_BATCH) {
+            List<String> batch = texts.subList(from, Math.min(from + ENCODE_BATCH, texts.size()));
+            int index = batches.size();
+            batches.add(index < BATCHES_IN_FLIGHT
+                ? splitBatch(batch, priority)
+                : batches.get(index - BATCHES_IN_FLIGHT)
+                    .handle((sentences, e) -> batch)
+                    .thenComposeAsync(next -> splitBatch(next, priority), encodeExecutor));
+        }
+        
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<List<String>> sentences = new ArrayList<>(texts.size());
+            for (CompletableFuture<List<List<String>>> batch : batches) sentences.addAll(batch.join());
+            return sentences;
+        });
+    }
+    
+    /**
+     * Tokenize a batch of texts in one native call and send all their windows.
+     */
+    private CompletableFuture<List<List<String>>> splitBatch(List<String> batch, Priority priority) {
+        List<String> nonEmpty = new ArrayList<>(batch.size());
+        for (String text : batch) {
+            if (text != null && !text.isEmpty()) nonEmpty.add(text);
+        }
+        Encoding[] encodings = nonEmpty.isEmpty() ? new Encoding[0] : tokenizer.batchEncode(nonEmpty);
+        
+        List<CompletableFuture<List<String>>> results = new ArrayList<>(batch.size());
+        int next = 0;
+        for (String text : batch) {
+            if (text == null || text.isEmpty()) {
+                results.add(CompletableFuture.completedFuture(new ArrayList<>()));
+                continue;
+            }
+            results.add(predict(text, encodings[next++], null, priority)
+                .thenApply(p -> extractSentences(text, p.charProbs)));
+        }
+        
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<List<String>> sentences = new ArrayList<>(results.size());
+            for (CompletableFuture<List<String>> result : results) sentences.add(result.join());
+            return sentences;
+        });
+    }
+    
+    /**
+     * Split text into sentences within a time budget. Every window inference
+     * shares one deadline; windows still running when it passes are cancelled
+     * and the sentences are built from the windows that finished.
+     * 
+     * @param text Input text
+     * @param budget Time allowed for the whole document, tokenization included
+     * @return Sentences, flagged partial if some windows did not finish in time
+     * @throws io.grpc.StatusRuntimeException DEADLINE_EXCEEDED if no window finished in time
+     */
+    public SplitResult split(String text, Duration budget) {
+        return split(text, budget, Priority.NORMAL);
+    }
+    
+    /**
+     * Split text into sentences within a time budget, at a given priority.
+     * 
+     * @param text Input text
+     * @param budget Time allowed for the whole document, tokenization included
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return Sentences, flagged partial if some windows did not finish in time
+     * @throws io.grpc.StatusRuntimeException DEADLINE_EXCEEDED if no window finished in time
+     */
+    public SplitResult split(String text, Duration budget, Priority priority) {
+        return TritonClient.await(splitAsync(text, budget, priority));
+    }
+    
+    /**
+     * Split text into sentences within a time budget, without blocking on inference.
+     * 
+     * @param text Input text
+     * @param budget Time allowed for the whole document, tokenization included
+     * @return Future of the sentences, flagged partial if some windows did not
+     *         finish in time; fails with DEADLINE_EXCEEDED if none did
+     */
+    public CompletableFuture<SplitResult> splitAsync(String text, Duration budget) {
+        return splitAsync(text, budget, Priority.NORMAL);
+    }
+    
+    /**
+     * Split text into sentences within a time budget and at a given priority,
+     * without blocking on inference.
+     * 
+     * @param text Input text
+     * @param budget Time allowed for the whole document, tokenization included
+     * @param priority Scheduling class, e.g. HIGH for interactive and LOW for bulk work
+     * @return Future of the sentences, flagged partial if some windows did not
+     *         finish in time; fails with DEADLINE_EXCEEDED if none did
+     */
+    public CompletableFuture<SplitResult> splitAsync(String text, Duration budget, Priority priority) {
+        Deadline deadline = Deadline.after(budget.toNanos(), TimeUnit.NANOSECONDS);
+        if (text == null || text.isEmpty()) {
+            return CompletableFuture.completedFuture(new SplitResult(new ArrayList<>(), 0, 0));
+        }
+        
+        return predict(text, deadline, priority).thenApply(p ->
+            new SplitResult(extractSentences(text, p.charProbs), p.windowsCompleted, p.windowsTotal));
+    }
+    
     /**
      * Get split probability for each character.
      * 
@@ -86,118 +418,232 @@ public class WtpSplit implements Closeable {
      * @return Probability array (length = text.length())
      */
     public float[] predictCharProbabilities(String text) {
-        // Tokenize
-        Encoding encoding = tokenizer.encode(text);
+        return TritonClient.await(predictCharProbabilitiesAsync(text));
+    }
+    
+    /**
+     * Get split probability for each character without blocking on inference.
+     * 
+     * @param text Input text
+     * @return Future of the probability array (length = text.length())
+     */
+    public CompletableFuture<float[]> predictCharProbabilitiesAsync(String text) {
+        return predict(text, null, Priority.NORMAL).thenApply(p -> p.charProbs);
+    }
+    
+    /**
+     * Score every window and map the averaged token probabilities to characters.
+     * With a deadline, windows that miss it are left out instead of failing
+     * the document, unless none finish at all.
+     */
+    private CompletableFuture<Prediction> predict(String text, Deadline deadline, Priority priority) {
+        return predict(text, tokenizer.encode(text), deadline, priority);
+    }
+    
+    private CompletableFuture<Prediction> predict(String text, Encoding encoding, Deadline deadline,
+                                                  Priority priority) {
         long[] tokenIds = encoding.getIds();
-        String[] tokens = encoding.getTokens();
         
         int numTokens = tokenIds.length;
         int effectiveBlockSize = Math.min(blockSize - 2, numTokens);
         
-        // Compute character positions for each token
-        int[][] tokenCharPositions = computeTokenPositions(text, tokens);
+        // Character offset where each token ends
+        int[] tokenEnds = computeTokenEnds(text, encoding);
         
-        // Process with sliding window
-        float[] tokenProbs = new float[numTokens];
-        float[] tokenCounts = new float[numTokens];
+        // Process with sliding window, all windows of a batch in one request
+        int[] starts = planWindows(numTokens, effectiveBlockSize);
+        List<CompletableFuture<Logits>> windows = batcher != null
+            ? submitBatched(tokenIds, starts, effectiveBlockSize, deadline, priority)
+            : submitDirect(tokenIds, starts, effectiveBlockSize, deadline, priority);
         
-        for (int start = 0; start < numTokens; start += stride) {
-            int end = Math.min(start + effectiveBlockSize, numTokens);
-            if (end == numTokens && start > 0) {
-                start = Math.max(0, end - effectiveBlockSize);
+        // Under a deadline, wait for every window to finish one way or the other
+        CompletableFuture<?>[] waitFor = windows.stream()
+            .map(w -> deadline == null ? w : w.handle((r, e) -> null))
+            .toArray(CompletableFuture<?>[]::new);
+        
+        return CompletableFuture.allOf(waitFor).thenApply(done -> {
+            float[] tokenProbs = new float[numTokens];
+            float[] tokenCounts = new float[numTokens];
+            int completed = 0;
+            for (int w = 0; w < starts.length; w++) {
+                CompletableFuture<Logits> window = windows.get(w);
+                if (window.isCompletedExceptionally()) {
+                    // Only windows that ran out of time are skipped; other failures fail the document
+                    Throwable error = window.handle((r, e) -> e).join();
+                    if (Status.fromThrowable(error).getCode() != Status.Code.DEADLINE_EXCEEDED) {
+                        throw error instanceof CompletionException ce ? ce : new CompletionException(error);
+                    }
+                    continue;
+                }
+                accumulate(window.join(), starts[w], effectiveBlockSize, tokenProbs, tokenCounts);
+                completed++;
             }
-            
-            // Build input with CLS and SEP
-            int chunkLen = end - start;
-            int[] inputIds = new int[chunkLen + 2];
-            int[] attentionMask = new int[chunkLen + 2];
-            
-            inputIds[0] = CLS_TOKEN;
-            attentionMask[0] = 1;
-            for (int i = 0; i < chunkLen; i++) {
-                inputIds[i + 1] = (int) tokenIds[start + i];
-                attentionMask[i + 1] = 1;
-            }
-            inputIds[chunkLen + 1] = SEP_TOKEN;
-            attentionMask[chunkLen + 1] = 1;
-            
-            // Run inference
-            float[][] logits = client.infer(inputIds, attentionMask);
-            
-            // Accumulate probabilities (skip CLS and SEP)
-            for (int i = 0; i < chunkLen; i++) {
-                float prob = sigmoid(logits[i + 1][0]);
-                tokenProbs[start + i] += prob;
-                tokenCounts[start + i] += 1.0f;
+            if (completed == 0 && starts.length > 0) {
+                throw Status.DEADLINE_EXCEEDED.withDescription("No window finished within the budget")
+                    .asRuntimeException();
             }
             
-            if (end >= numTokens) break;
-        }
-        
-        // Average token probabilities
-        for (int i = 0; i < numTokens; i++) {
-            if (tokenCounts[i] > 0) {
-                tokenProbs[i] /= tokenCounts[i];
+            // Average token probabilities
+            for (int i = 0; i < numTokens; i++) {
+                if (tokenCounts[i] > 0) {
+                    tokenProbs[i] /= tokenCounts[i];
+                }
             }
-        }
-        
-        // Map token probabilities to character probabilities
-        return mapToCharProbabilities(text, tokenProbs, tokenCharPositions);
+            
+            // Map token probabilities to character probabilities
+            return new Prediction(mapToCharProbabilities(text, tokenProbs, tokenEnds),
+                completed, starts.length);
+        });
     }
     
     /**
-     * Compute character positions for each token by matching in the text.
+     * Send windows in batches of at most maxBatchSize.
      */
-    private int[][] computeTokenPositions(String text, String[] tokens) {
-        int[][] positions = new int[tokens.length][2]; // [start, end]
-        int currentPos = 0;
-        
-        for (int i = 0; i < tokens.length; i++) {
-            String token = tokens[i];
+    private List<CompletableFuture<Logits>> submitDirect(long[] tokenIds, int[] starts, int windowSize,
+                                                         Deadline deadline, Priority priority) {
+        int length = bucket(windowSize + 2);
+        int[] attentionMask = windowMask(windowSize + 2, length);
+        List<CompletableFuture<Logits>> windows = new ArrayList<>(starts.length);
+        for (int first = 0; first < starts.length; first += maxBatchSize) {
+            int batch = Math.min(maxBatchSize, starts.length - first);
             
-            // Handle XLM-RoBERTa's special space prefix (▁)
-            String searchToken = token.replace("▁", " ").replace("Ġ", " ");
-            if (searchToken.startsWith(" ") && currentPos == 0) {
-                searchToken = searchToken.substring(1);
+            int[][] inputIds = new int[batch][];
+            int[][] masks = new int[batch][];
+            for (int b = 0; b < batch; b++) {
+                inputIds[b] = buildWindow(tokenIds, starts[first + b], windowSize, length);
+                masks[b] = attentionMask;
             }
             
-            // Find the token in the text starting from current position
-            int foundPos = -1;
-            String lowerText = text.toLowerCase();
-            String lowerToken = searchToken.toLowerCase();
-            
-            // Try exact match first
-            if (currentPos < text.length()) {
-                int idx = lowerText.indexOf(lowerToken, currentPos);
-                if (idx >= 0 && idx <= currentPos + 10) {
-                    foundPos = idx;
-                }
+            CompletableFuture<Logits> logits = backend.inferLogitsAsync(inputIds, masks, true, deadline, priority);
+            for (int b = 0; b < batch; b++) {
+                int row = b;
+                windows.add(logits.thenApply(l -> l.row(row)));
             }
-            
-            if (foundPos >= 0) {
-                positions[i][0] = foundPos;
-                positions[i][1] = foundPos + searchToken.length();
-                currentPos = positions[i][1];
-            } else {
-                // Fallback: advance by 1
-                positions[i][0] = currentPos;
-                positions[i][1] = Math.min(currentPos + 1, text.length());
-                currentPos = positions[i][1];
+        }
+        return windows;
+    }
+    
+    /**
+     * Submit every window to the shared batcher.
+     */
+    private List<CompletableFuture<Logits>> submitBatched(long[] tokenIds, int[] starts, int windowSize,
+                                                          Deadline deadline, Priority priority) {
+        int length = bucket(windowSize + 2);
+        int[] attentionMask = windowMask(windowSize + 2, length);
+        List<CompletableFuture<Logits>> windows = new ArrayList<>(starts.length);
+        for (int start : starts) {
+            windows.add(batcher.submit(buildWindow(tokenIds, start, windowSize, length), attentionMask,
+                deadline, priority));
+        }
+        return windows;
+    }
+    
+    /**
+     * Build one window's input IDs, wrapped in CLS and SEP and right-padded to {@code length}.
+     */
+    private int[] buildWindow(long[] tokenIds, int start, int windowSize, int length) {
+        int[] inputIds = new int[length];
+        inputIds[0] = CLS_TOKEN;
+        for (int i = 0; i < windowSize; i++) {
+            inputIds[i + 1] = (int) tokenIds[start + i];
+        }
+        inputIds[windowSize + 1] = SEP_TOKEN;
+        Arrays.fill(inputIds, windowSize + 2, length, PAD_TOKEN);
+        return inputIds;
+    }
+    
+    /**
+     * Attention mask of {@code valid} ones followed by zeros up to {@code length}.
+     */
+    private static int[] windowMask(int valid, int length) {
+        int[] mask = new int[length];
+        Arrays.fill(mask, 0, valid, 1);
+        return mask;
+    }
+    
+    /**
+     * The smallest bucket that fits a window of {@code length}, or the length
+     * itself when bucketing is off or no bucket is large enough.
+     */
+    private int bucket(int length) {
+        for (int bucket : buckets) {
+            if (bucket >= length) return bucket;
+        }
+        return length;
+    }
+    
+    /**
+     * Accumulate one window's probabilities (skip CLS and SEP).
+     */
+    private void accumulate(Logits window, int start, int windowSize,
+                            float[] tokenProbs, float[] tokenCounts) {
+        for (int i = 0; i < windowSize; i++) {
+            tokenProbs[start + i] += sigmoid(window.get(0, i + 1, 0));
+            tokenCounts[start + i] += 1.0f;
+        }
+    }
+    
+    /**
+     * Plan sliding window start offsets. Every window spans exactly
+     * {@code windowSize} tokens; the last one is shifted back to end at the
+     * final token.
+     */
+    private int[] planWindows(int numTokens, int windowSize) {
+        List<Integer> starts = new ArrayList<>();
+        for (int start = 0; start < numTokens; start += stride) {
+            int end = Math.min(start + windowSize, numTokens);
+            if (end == numTokens && start > 0) {
+                start = Math.max(0, end - windowSize);
             }
+            starts.add(start);
+            if (end >= numTokens) break;
         }
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    /**
+     * End offset (exclusive) of each token in the text, or 0 for special
+     * tokens, taken from the character spans the tokenizer reports. Linear in
+     * the text length.
+     */
+    static int[] computeTokenEnds(String text, Encoding encoding) {
+        CharSpan[] spans = encoding.getCharTokenSpans();
+        // Spans count code points; only text with surrogate pairs needs them mapped to string indices
+        int codePoints = text.codePointCount(0, text.length());
+        int[] index = codePoints == text.length() ? null : codePointIndex(text, codePoints);
         
-        return positions;
+        int[] ends = new int[spans.length];
+        for (int i = 0; i < spans.length; i++) {
+            if (spans[i] == null) continue;
+            int end = Math.min(spans[i].getEnd(), codePoints);
+            ends[i] = index == null ? end : index[end];
+        }
+        return ends;
+    }
+    
+    /**
+     * String index of every code point, plus one past the end.
+     */
+    static int[] codePointIndex(String text, int codePoints) {
+        int[] index = new int[codePoints + 1];
+        int pos = 0;
+        for (int cp = 0; cp < codePoints; cp++) {
+            index[cp] = pos;
+            pos += Character.charCount(text.codePointAt(pos));
+        }
+        index[codePoints] = pos;
+        return index;
     }
     
     /**
      * Map token-level probabilities to character-level.
      * The probability is assigned to the last character of each token.
      */
-    private float[] mapToCharProbabilities(String text, float[] tokenProbs, int[][] positions) {
+    private float[] mapToCharProbabilities(String text, float[] tokenProbs, int[] tokenEnds) {
         float[] charProbs = new float[text.length()];
         
         for (int i = 0; i < tokenProbs.length; i++) {
-            int endChar = positions[i][1];
+            int endChar = tokenEnds[i];
             if (endChar > 0 && endChar <= text.length()) {
                 charProbs[endChar - 1] = Math.max(charProbs[endChar - 1], tokenProbs[i]);
             }
@@ -239,11 +685,146 @@ public class WtpSplit implements Closeable {
     }
     
     public boolean isReady() {
-        return client.isReady();
+        return backend.isReady();
+    }
+    
+    /**
+     * Warm up for at most 30 seconds; see {@link #warmup(Duration)}.
+     */
+    public boolean warmup() {
+        return warmup(Duration.ofSeconds(30));
+    }
+    
+    /**
+     * Get ready for traffic before it arrives. Connects every channel, then
+     * repeats rounds that send one synthetic inference per window shape this
+     * instance can produce (each power-of-two length up to the block size
+     * alone, and full blocks at each power-of-two batch size up to the
+     * maximum), so Triton builds or selects its TensorRT profiles, and that
+     * run tokenization, alignment and sentence extraction on a sample text.
+     * Rounds continue until one no longer triggers JIT compilation.
+     * 
+     * @param budget Longest time to keep warming up
+     * @return Whether the instance became warm within the budget; see {@link #isWarm()}
+     * @throws io.grpc.StatusRuntimeException If a synthetic inference fails other than by running out of time
+     */
+    public boolean warmup(Duration budget) {
+        Deadline deadline = Deadline.after(budget.toNanos(), TimeUnit.NANOSECONDS);
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean measurable = jit != null && jit.isCompilationTimeMonitoringSupported();
+        backend.connect();
+        
+        long[] sampleIds = tokenizer.encode(WARMUP_TEXT).getIds();
+        List<int[]> shapes = warmupShapes();
+        long compiled = measurable ? jit.getTotalCompilationTime() : 0;
+        for (int round = 0; !deadline.isExpired(); round++) {
+            for (int pass = 0; pass < WARMUP_LOCAL_PASSES; pass++) {
+                warmupLocal();
+            }
+            try {
+                warmupRemote(sampleIds, shapes, deadline);
+            } catch (StatusRuntimeException e) {
+                if (e.getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED) return false;
+                throw e;
+            }
+            
+            // Without a JIT to watch, a few rounds have to do
+            long now = measurable ? jit.getTotalCompilationTime() : 0;
+            boolean settled = measurable ? round > 0 && now - compiled < WARM_COMPILE_MILLIS : round >= 4;
+            compiled = now;
+            if (settled) {
+                warm = true;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Whether {@link #warmup} has finished, e.g. to gate a readiness probe.
+     */
+    public boolean isWarm() {
+        return warm;
     }
     
+    /**
+     * Sequence length and batch size of every request shape split() sends:
+     * documents shorter than a block go out alone at their own (bucketed)
+     * length, longer ones as batches of full blocks. Without buckets,
+     * power-of-two lengths stand in for the arbitrary ones.
+     */
+    private List<int[]> warmupShapes() {
+        int full = bucket(blockSize);
+        List<int[]> shapes = new ArrayList<>();
+        if (buckets.length > 0) {
+            for (int bucket : buckets) {
+                if (bucket < full) shapes.add(new int[] { bucket, 1 });
+            }
+        } else {
+            for (int length = 16; length < blockSize; length *= 2) {
+                shapes.add(new int[] { length, 1 });
+            }
+        }
+        for (int batch = 1; batch < maxBatchSize; batch *= 2) {
+            shapes.add(new int[] { full, batch });
+        }
+        shapes.add(new int[] { full, maxBatchSize });
+        return shapes;
+    }
+    
+    private void warmupRemote(long[] sampleIds, List<int[]> shapes, Deadline deadline) {
+        List<CompletableFuture<Logits>> calls = new ArrayList<>(shapes.size());
+        for (int[] shape : shapes) {
+            int windowSize = Math.min(shape[0], blockSize) - 2;
+            long[] ids = new long[windowSize];
+            for (int i = 0; i < windowSize; i++) ids[i] = sampleIds[i % sampleIds.length];
+            int[][] inputIds = new int[shape[1]][];
+            int[][] masks = new int[shape[1]][];
+            for (int b = 0; b < shape[1]; b++) {
+                inputIds[b] = buildWindow(ids, 0, windowSize, shape[0]);
+                masks[b] = windowMask(windowSize + 2, shape[0]);
+            }
+            calls.add(backend.inferLogitsAsync(inputIds, masks, true, deadline, Priority.LOW));
+        }
+        TritonClient.await(CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])));
+    }
+    
+    /**
+     * One pass over the client-side text processing, with made-up probabilities.
+     */
+    private void warmupLocal() {
+        Encoding encoding = tokenizer.encode(WARMUP_TEXT);
+        String[] tokens = encoding.getTokens();
+        int[] tokenEnds = computeTokenEnds(WARMUP_TEXT, encoding);
+        float[] tokenProbs = new float[tokens.length];
+        for (int i = 0; i < tokenProbs.length; i++) {
+            tokenProbs[i] = sigmoid(tokens[i].endsWith(".") ? 4f : -4f);
+        }
+        extractSentences(WARMUP_TEXT, mapToCharProbabilities(WARMUP_TEXT, tokenProbs, tokenEnds));
+    }
+    
+    /**
+     * Character probabilities and how many windows contributed to them.
+     */
+    private static class Prediction {
+        final float[] charProbs;
+        final int windowsCompleted;
+        final int windowsTotal;
+        
+        Prediction(float[] charProbs, int windowsCompleted, int windowsTotal) {
+            this.charProbs = charProbs;
+            this.windowsCompleted = windowsCompleted;
+            this.windowsTotal = windowsTotal;
+        }
+    }
+    
+    /**
+     * Release the shared tokenizer and, if this instance created it, the client.
+     */
     @Override
     public void close() throws IOException {
-        client.close();
+        if (!closed.compareAndSet(false, true)) return;
+        SharedTokenizers.release(tokenizerSource);
+        if (ownsBackend) backend.close();
     }
 }
@@ -0,0 +1,62 @@
+package com.wtpsplit.triton;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HealthWatcherTest {
+
+    @Test
+    void listenerAddedAfterFirstProbeGetsCurrentState() throws IOException {
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", deadPort).usePlaintext().build();
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        try {
+            HealthWatcher health = new HealthWatcher(channel, "sat_3l_sm", timer, 60_000);
+            // Waits for the first probe, which fails fast against a closed port
+            assertFalse(health.isReady());
+
+            List<Boolean> seen = new CopyOnWriteArrayList<>();
+            health.addListener(seen::add);
+            assertEquals(List.of(false), seen);
+            health.close();
+        } finally {
+            timer.shutdownNow();
+            channel.shutdownNow();
+        }
+    }
+
+    @Test
+    void listenerAddedAfterFirstProbeSeesReadyServer() throws IOException {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        try (MockTritonServer mock = MockTritonServer.builder("sat_3l_sm").start()) {
+            ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", mock.port()).usePlaintext().build();
+            try {
+                HealthWatcher health = new HealthWatcher(channel, "sat_3l_sm", timer, 60_000);
+                assertTrue(health.isReady());
+
+                List<Boolean> seen = new CopyOnWriteArrayList<>();
+                health.addListener(seen::add);
+                assertEquals(List.of(true), seen);
+                health.close();
+            } finally {
+                channel.shutdownNow();
+            }
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.wtpsplit.triton;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The constructor and factory calls shown in README.md, against the mock
+ * server. Mostly a compile check: overloads that make a documented call
+ * ambiguous fail the build here.
+ */
+class ReadmeExamplesTest {
+
+    private static final String MODEL = "sat_3l_sm";
+    private static final String TEXT = "Hello world. This is a test.";
+
+    @Test
+    void hostAndPort() throws IOException {
+        try (MockTritonServer mock = MockTritonServer.builder(MODEL).start();
+             WtpSplit wtp = new WtpSplit("localhost", mock.port(), MODEL)) {
+            assertEquals(2, wtp.split(TEXT).size());
+        }
+    }
+
+    @Test
+    void customSettings() throws IOException {
+        try (MockTritonServer mock = MockTritonServer.builder(MODEL).start();
+             WtpSplit wtp = new WtpSplit("localhost", mock.port(), MODEL, 0.25f, 512, 64, 32)) {
+            assertEquals(2, wtp.split(TEXT).size());
+        }
+    }
+
+    @Test
+    void microBatching() throws IOException {
+        try (MockTritonServer mock = MockTritonServer.builder(MODEL).start();
+             TritonClient client = new TritonClient("localhost", mock.port(), MODEL);
+             MicroBatcher batcher = new MicroBatcher(client, 32, 500);
+             WtpSplit wtp = new WtpSplit(client, batcher, 0.25f, 512, 64, 32)) {
+            assertEquals(2, wtp.split(TEXT).size());
+        }
+    }
+
+    @Test
+    void bucketsWithoutBatcher() throws IOException {
+        try (MockTritonServer mock = MockTritonServer.builder(MODEL).start();
+             TritonClient client = new TritonClient("localhost", mock.port(), MODEL);
+             WtpSplit wtp = new WtpSplit(client, null, 0.25f, 512, 64, 32,
+                 32, 64, 128, 256, 512)) {
+            assertEquals(2, wtp.split(TEXT).size());
+        }
+    }
+
+    @Test
+    void explicitTokenizer() throws IOException {
+        // Needs a local tokenizer.json, named the same way as for offline hosts
+        String configured = System.getProperty(SharedTokenizers.PROPERTY);
+        assumeTrue(configured != null && Files.exists(Path.of(configured)));
+        try (MockTritonServer mock = MockTritonServer.builder(MODEL).start();
+             TritonClient client = new TritonClient("localhost", mock.port(), MODEL);
+             WtpSplit wtp = WtpSplit.withTokenizer(client, Path.of(configured), 0.25f, 512, 64, 32)) {
+            assertEquals(2, wtp.split(TEXT).size());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.wtpsplit.triton;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.huggingface.tokenizers.jni.CharSpan;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Token ends from {@link WtpSplit#computeTokenEnds} on ASCII, accented, CJK
+ * and surrogate-pair text: each falls on a character boundary, never goes
+ * backwards, and closes a slice of text that reads as the token. Uses the
+ * same tokenizer as WtpSplit, so {@code -Dwtpsplit.tokenizer} points it at a
+ * local file.
+ */
+class TokenAlignmentTest {
+
+    private static final String[] TEXTS = {
+        "Hello world. This is a test. How are you doing today?",
+        "Dr. Smith paid $3.50 at 3:30 p.m.  Then he   left!",
+        "Café crème, naïve façade. Über straße?",
+        "東京は日本の首都です。大阪は大きい都市です。",
+        "Mixed 日本語 and English. 中文句子。 Done.",
+        "Emoji 😀 here. Another 🎉🎉 party! Math 𝒳𝒴 and 𠀋 rare CJK.",
+        "😀",
+    };
+
+    @Test
+    void tokenEndsAlignWithText() throws IOException {
+        String source = SharedTokenizers.defaultSource(WtpSplit.TOKENIZER);
+        HuggingFaceTokenizer tokenizer = SharedTokenizers.acquire(source);
+        List<String> problems = new ArrayList<>();
+        try {
+            for (String text : TEXTS) {
+                check(tokenizer.encode(text), text, problems);
+            }
+        } finally {
+            SharedTokenizers.release(source);
+        }
+        assertEquals(List.of(), problems);
+    }
+
+    private static void check(Encoding encoding, String text, List<String> problems) {
+        String[] tokens = encoding.getTokens();
+        CharSpan[] spans = encoding.getCharTokenSpans();
+        int[] ends = WtpSplit.computeTokenEnds(text, encoding);
+
+        int codePoints = text.codePointCount(0, text.length());
+        int[] index = WtpSplit.codePointIndex(text, codePoints);
+
+        int previous = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            String where = "\"" + text + "\" token " + i + " " + tokens[i] + " ends at " + ends[i] + ": ";
+            if (spans[i] == null) {
+                if (ends[i] != 0) problems.add(where + "special token not at 0");
+                continue;
+            }
+            int start = index[Math.min(spans[i].getStart(), codePoints)];
+            int end = ends[i];
+            if (end < previous || end > text.length()) {
+                problems.add(where + "out of order");
+            } else if (end < text.length() && Character.isLowSurrogate(text.charAt(end))) {
+                problems.add(where + "splits a surrogate pair");
+            } else if (!readsAs(text.substring(start, end), tokens[i])) {
+                problems.add(where + "covers \"" + text.substring(start, end) + "\"");
+            }
+            previous = end;
+        }
+    }
+
+    /**
+     * The text a span covers matches its token, allowing for the word-start
+     * marker and the tokenizer's NFKC normalization.
+     */
+    private static boolean readsAs(String covered, String token) {
+        String surface = token.replace("▁", " ").strip();
+        String text = Normalizer.normalize(covered, Normalizer.Form.NFKC).strip();
+        return surface.isEmpty() || "<unk>".equals(token)
+            || text.equals(Normalizer.normalize(surface, Normalizer.Form.NFKC));
+    }
+}